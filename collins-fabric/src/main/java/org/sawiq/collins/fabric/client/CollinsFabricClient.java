@@ -2,6 +2,7 @@ package org.sawiq.collins.fabric.client;
 
 import net.fabricmc.api.ClientModInitializer;
 import org.sawiq.collins.fabric.client.net.CollinsNet;
+import org.sawiq.collins.fabric.client.video.FFmpegWarmup;
 import org.sawiq.collins.fabric.client.video.VideoScreenRenderer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
@@ -16,10 +17,14 @@ public final class CollinsFabricClient implements ClientModInitializer {
         CollinsNet.initClientReceiver();
         CollinsClientCommands.init();
 
+        // natives FFmpeg и путь декода — в фоне, до первого экрана
+        FFmpegWarmup.start();
+
         ClientTickEvents.END_CLIENT_TICK.register(VideoScreenManager::tick);
 
         ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> {
             VideoScreenManager.stopAll();
+            CollinsNet.resetSession();
         });
     }
 }
@@ -5,6 +5,7 @@ import com.mojang.brigadier.arguments.StringArgumentType;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.text.MutableText;
 import net.minecraft.text.Style;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
@@ -12,6 +13,7 @@ import org.sawiq.collins.fabric.client.util.TimeFormatUtil;
 import org.sawiq.collins.fabric.client.video.VideoPlayer;
 import org.sawiq.collins.fabric.client.video.VideoScreen;
 import org.sawiq.collins.fabric.client.video.VideoScreenManager;
+import org.sawiq.collins.fabric.client.video.VideoStats;
 
 public final class CollinsClientCommands {
 
@@ -31,7 +33,11 @@ public final class CollinsClientCommands {
                     .then(ClientCommandManager.literal("time")
                             .executes(ctx -> showTimeline(null))
                             .then(ClientCommandManager.argument("screen", StringArgumentType.word())
-                                    .executes(ctx -> showTimeline(StringArgumentType.getString(ctx, "screen"))))));
+                                    .executes(ctx -> showTimeline(StringArgumentType.getString(ctx, "screen")))))
+                    .then(ClientCommandManager.literal("stats")
+                            .executes(ctx -> showStats())
+                            .then(ClientCommandManager.literal("reset")
+                                    .executes(ctx -> resetStats()))));
 
             // Команды для управления кэшем
             dispatcher.register(ClientCommandManager.literal("collins-cache")
@@ -116,6 +122,28 @@ public final class CollinsClientCommands {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int showStats() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.player == null) return 0;
+
+        MutableText msg = PREFIX.copy().append(Text.literal("Статистика видео:").setStyle(Style.EMPTY.withColor(GREEN)));
+        for (String line : VideoStats.lines()) {
+            msg.append(Text.literal("\n  " + line).setStyle(Style.EMPTY.withColor(Formatting.WHITE)));
+        }
+        client.player.sendMessage(msg, false);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int resetStats() {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.player == null) return 0;
+
+        VideoStats.reset();
+        client.player.sendMessage(PREFIX.copy().append(
+            Text.literal("Статистика сброшена").setStyle(Style.EMPTY.withColor(GREEN))), false);
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static int showTimeline(String screenName) {
         MinecraftClient client = MinecraftClient.getInstance();
         if (client.player == null) return 0;
@@ -15,6 +15,34 @@ public final class CollinsClientConfig {
     public int localVolumePercent = 100;
     public boolean renderVideo = true;
     public boolean actionbarTimeline = true;
+    // RGBA прямо из swscale в off-heap буфер (без BGR24 -> ABGR на CPU)
+    public boolean directRgbaDecode = true;
+    // заливка текстуры через persistent-mapped PBO (GL 4.4), иначе обычный upload()
+    public boolean pboUpload = true;
+    // лимит одновременных декодеров (0 = авто: ядра / 2, от 2 до 8) и памяти под кадры
+    public int maxDecoders = 0;
+    public int frameMemoryBudgetMb = 768;
+    // границы бюджета памяти кадров — общие для sanitize и слайдера в меню
+    public static final int FRAME_MEMORY_BUDGET_MIN_MB = 64;
+    public static final int FRAME_MEMORY_BUDGET_MAX_MB = 4096;
+    // потоков FFmpeg на декодер (0 = авто: свободные ядра поровну на играющие экраны)
+    public int decoderThreads = 0;
+    // экраны с одним url и синхронизацией декодируются один раз и делят текстуру
+    public boolean sharedDecode = true;
+    // разрешение декодирования по видимому размеру экрана (LOD)
+    public boolean adaptiveResolution = true;
+    // экран вне поля зрения дольше секунды: декодировать только ключевые кадры (звук не прерывается)
+    public boolean offscreenKeyframesOnly = false;
+    // число параллельных Range-соединений при скачивании в кэш (1 = одним потоком)
+    public int downloadConnections = 4;
+    // файл для кэша играется во время скачивания (нужен Range), недостающие блоки качаются первыми
+    public boolean progressiveCache = true;
+    // loop-экраны зацикливаются без переоткрытия декодера (перемотка на EOF, звук без разрыва)
+    public boolean gaplessLoop = true;
+    // предзагрузка по синку: resolve/probe url экранов текущего мира и начало файлов, которые играются с диска
+    public boolean prefetchMedia = true;
+    // сколько МБ предзагрузка может скачать за 10 минут (0 = только probe, без скачивания)
+    public int prefetchBudgetMb = 64;
 
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final String FILE_NAME = "collins.json";
@@ -82,5 +110,15 @@ public final class CollinsClientConfig {
     private static void sanitize(CollinsClientConfig cfg) {
         if (cfg.localVolumePercent < 0) cfg.localVolumePercent = 0;
         if (cfg.localVolumePercent > 100) cfg.localVolumePercent = 100;
+        if (cfg.maxDecoders < 0) cfg.maxDecoders = 0;
+        if (cfg.maxDecoders > 16) cfg.maxDecoders = 16;
+        if (cfg.frameMemoryBudgetMb < FRAME_MEMORY_BUDGET_MIN_MB) cfg.frameMemoryBudgetMb = FRAME_MEMORY_BUDGET_MIN_MB;
+        if (cfg.frameMemoryBudgetMb > FRAME_MEMORY_BUDGET_MAX_MB) cfg.frameMemoryBudgetMb = FRAME_MEMORY_BUDGET_MAX_MB;
+        if (cfg.decoderThreads < 0) cfg.decoderThreads = 0;
+        if (cfg.decoderThreads > 16) cfg.decoderThreads = 16;
+        if (cfg.downloadConnections < 1) cfg.downloadConnections = 1;
+        if (cfg.downloadConnections > 8) cfg.downloadConnections = 8;
+        if (cfg.prefetchBudgetMb < 0) cfg.prefetchBudgetMb = 0;
+        if (cfg.prefetchBudgetMb > 512) cfg.prefetchBudgetMb = 512;
     }
 }
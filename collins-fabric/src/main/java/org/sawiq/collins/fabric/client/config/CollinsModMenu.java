@@ -42,6 +42,72 @@ public final class CollinsModMenu implements ModMenuApi {
                 .setSaveConsumer(v -> cfg.actionbarTimeline = v)
                 .build());
 
+        general.addEntry(eb.startBooleanToggle(Text.literal("Direct RGBA decode"), cfg.directRgbaDecode)
+                .setDefaultValue(true)
+                .setSaveConsumer(v -> cfg.directRgbaDecode = v)
+                .build());
+
+        general.addEntry(eb.startBooleanToggle(Text.literal("PBO texture upload"), cfg.pboUpload)
+                .setDefaultValue(true)
+                .setSaveConsumer(v -> cfg.pboUpload = v)
+                .build());
+
+        general.addEntry(eb.startIntSlider(Text.literal("Max decoders (0 = auto)"), cfg.maxDecoders, 0, 16)
+                .setDefaultValue(0)
+                .setSaveConsumer(v -> cfg.maxDecoders = v)
+                .build());
+
+        general.addEntry(eb.startIntSlider(Text.literal("Frame memory budget (MB)"), cfg.frameMemoryBudgetMb,
+                        CollinsClientConfig.FRAME_MEMORY_BUDGET_MIN_MB, CollinsClientConfig.FRAME_MEMORY_BUDGET_MAX_MB)
+                .setDefaultValue(768)
+                .setSaveConsumer(v -> cfg.frameMemoryBudgetMb = v)
+                .build());
+
+        general.addEntry(eb.startIntSlider(Text.literal("Decoder threads per screen (0 = auto)"), cfg.decoderThreads, 0, 16)
+                .setDefaultValue(0)
+                .setSaveConsumer(v -> cfg.decoderThreads = v)
+                .build());
+
+        general.addEntry(eb.startBooleanToggle(Text.literal("Shared decode for identical screens"), cfg.sharedDecode)
+                .setDefaultValue(true)
+                .setSaveConsumer(v -> cfg.sharedDecode = v)
+                .build());
+
+        general.addEntry(eb.startBooleanToggle(Text.literal("Adaptive resolution (LOD)"), cfg.adaptiveResolution)
+                .setDefaultValue(true)
+                .setSaveConsumer(v -> cfg.adaptiveResolution = v)
+                .build());
+
+        general.addEntry(eb.startBooleanToggle(Text.literal("Keyframes only when off-screen"), cfg.offscreenKeyframesOnly)
+                .setDefaultValue(false)
+                .setSaveConsumer(v -> cfg.offscreenKeyframesOnly = v)
+                .build());
+
+        general.addEntry(eb.startIntSlider(Text.literal("Download connections"), cfg.downloadConnections, 1, 8)
+                .setDefaultValue(4)
+                .setSaveConsumer(v -> cfg.downloadConnections = v)
+                .build());
+
+        general.addEntry(eb.startBooleanToggle(Text.literal("Play while downloading"), cfg.progressiveCache)
+                .setDefaultValue(true)
+                .setSaveConsumer(v -> cfg.progressiveCache = v)
+                .build());
+
+        general.addEntry(eb.startBooleanToggle(Text.literal("Gapless loop"), cfg.gaplessLoop)
+                .setDefaultValue(true)
+                .setSaveConsumer(v -> cfg.gaplessLoop = v)
+                .build());
+
+        general.addEntry(eb.startBooleanToggle(Text.literal("Prefetch screen videos"), cfg.prefetchMedia)
+                .setDefaultValue(true)
+                .setSaveConsumer(v -> cfg.prefetchMedia = v)
+                .build());
+
+        general.addEntry(eb.startIntSlider(Text.literal("Prefetch budget (MB / 10 min)"), cfg.prefetchBudgetMb, 0, 512)
+                .setDefaultValue(64)
+                .setSaveConsumer(v -> cfg.prefetchBudgetMb = v)
+                .build());
+
         return builder.build();
     }
 }
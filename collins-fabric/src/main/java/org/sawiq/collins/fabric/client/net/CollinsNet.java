@@ -2,11 +2,10 @@ package org.sawiq.collins.fabric.client.net;
 
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import org.sawiq.collins.fabric.client.state.ScreenState;
+import org.sawiq.collins.fabric.client.video.VideoScreenManager;
 import org.sawiq.collins.fabric.net.CollinsMainS2CPayload;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -28,161 +27,120 @@ public final class CollinsNet {
     public static volatile long SERVER_NOW_MS = 0;
     public static volatile long CLIENT_RECV_MS = 0;
 
+    // v3: ревизия последнего применённого снапшота/дельты; -1 — снапшота ещё не было
+    private static long REVISION = -1L;
+
     public static void initClientReceiver() {
         if (DEBUG) System.out.println("[Collins] Client init: registering receiver collins:main");
 
+        // разбор — на сетевом потоке, прямо из буфера пакета (см. CollinsMainS2CPayload.CODEC)
+        CollinsMainS2CPayload.setDecoder(SyncDecoder::decode);
+
         ClientPlayNetworking.registerGlobalReceiver(CollinsMainS2CPayload.ID, (payload, context) -> {
-            byte[] bytes = payload.data();
+            Object decoded = payload.decoded();
+            if (decoded == null && payload.data() != null) {
+                decoded = SyncDecoder.decode(ByteBuffer.wrap(payload.data()));
+            }
+            if (!(decoded instanceof SyncDecoder.Update update)) return;
 
             context.client().execute(() -> {
                 try {
-                    parseWrapped(bytes);
+                    apply(update);
                 } catch (Exception e) {
-                    if (DEBUG) System.out.println("[Collins] Failed to parse packet: " + e.getMessage());
+                    if (DEBUG) System.out.println("[Collins] Failed to apply packet: " + e.getMessage());
                 }
             });
         });
     }
 
-    private static void parseWrapped(byte[] bytes) throws Exception {
-        if (bytes == null || bytes.length < 8) return; // 4 magic + 4 len
-
-        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
-            byte[] magic = new byte[4];
-            in.readFully(magic);
-
-            String m = new String(magic, StandardCharsets.US_ASCII);
-            if (!m.equals("COLL")) {
-                return;
-            }
-
-            int len = in.readInt();
-            if (len < 0 || len > MAX_PACKET_BYTES) {
-                if (DEBUG) System.out.println("[Collins] Bad len=" + len);
-                return;
-            }
-
-            int available = in.available();
-            if (available < len) {
-                if (DEBUG) System.out.println("[Collins] Not enough bytes. need=" + len + " avail=" + available);
-                return;
-            }
-
-            byte[] inner = new byte[len];
-            in.readFully(inner);
-
-            parseInner(inner);
-        }
+    /**
+     * Отключение от сервера: забыть экраны, глобальные настройки, якорь времени и ревизию.
+     * Иначе дельты следующего сервера, пришедшие раньше его снапшота, применялись бы к экранам
+     * старого (ревизия старого сервера уже >= 0), а дельты с ревизией не выше старой — терялись. Клиентский поток.
+     */
+    public static void resetSession() {
+        SCREENS.clear();
+        GLOBAL_VOLUME = 1.0f;
+        HEAR_RADIUS = 100;
+        SERVER_NOW_MS = 0;
+        CLIENT_RECV_MS = 0;
+        REVISION = -1L;
+        if (DEBUG) System.out.println("[Collins] Session reset");
     }
 
-    private static void parseInner(byte[] inner) throws Exception {
-        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(inner))) {
-            byte msg = in.readByte();
-            int version = in.readInt();
-
-            if (msg != 1) {
-                if (DEBUG) System.out.println("[Collins] Unsupported msg=" + msg + " ver=" + version);
-                return;
-            }
-
-            if (version == 1) {
-                // v1: только экраны, без таймера и глобальных настроек
-                int count = in.readInt();
-                if (count < 0 || count > 10_000) {
-                    if (DEBUG) System.out.println("[Collins] Bad screen count=" + count);
-                    return;
-                }
-
-                GLOBAL_VOLUME = 1.0f;
-                HEAR_RADIUS = 100;
-                SERVER_NOW_MS = 0;
-                CLIENT_RECV_MS = 0;
-
-                SCREENS.clear();
-                for (int i = 0; i < count; i++) {
-                    String name = in.readUTF();
-                    String world = in.readUTF();
-
-                    int x1 = in.readInt(), y1 = in.readInt(), z1 = in.readInt();
-                    int x2 = in.readInt(), y2 = in.readInt(), z2 = in.readInt();
-
-                    byte axis = in.readByte();
-                    String url = in.readUTF();
-
-                    boolean playing = in.readBoolean();
-                    boolean loop = in.readBoolean();
-                    float volume = in.readFloat();
-
-                    SCREENS.put(name.toLowerCase(), new ScreenState(
-                            name, world,
-                            x1, y1, z1,
-                            x2, y2, z2,
-                            axis,
-                            url,
-                            playing,
-                            loop,
-                            volume,
-                            0L,
-                            0L
-                    ));
-                }
-
-                org.sawiq.collins.fabric.client.video.VideoScreenManager.applySync(SCREENS);
-                if (DEBUG) System.out.println("[Collins] SYNC v1 received: " + count + " screens");
-                return;
-            }
-
-            if (version != 2) {
-                if (DEBUG) System.out.println("[Collins] Unsupported msg=" + msg + " ver=" + version);
-                return;
-            }
+    /**
+     * Клиентский поток: применить уже разобранное обновление.
+     * Полный список сравнивается с текущими экранами в VideoScreenManager — трогаются только изменившиеся;
+     * дельта v3 применяется к одному экрану, если её ревизия новее последней применённой
+     * (устаревшие и дубли отбрасываются).
+     */
+    private static void apply(SyncDecoder.Update update) {
+        if (update instanceof SyncDecoder.Full full) {
+            GLOBAL_VOLUME = full.globalVolume();
+            HEAR_RADIUS = full.hearRadius();
+            SERVER_NOW_MS = full.serverNowMs();
+            CLIENT_RECV_MS = full.recvMs();
+
+            SCREENS.keySet().retainAll(full.screens().keySet());
+            SCREENS.putAll(full.screens());
+            if (full.version() == 3) REVISION = full.revision();
+
+            VideoScreenManager.applySync(SCREENS);
+            if (DEBUG) System.out.println("[Collins] SYNC v" + full.version() + " applied: rev=" + full.revision()
+                    + " screens=" + full.screens().size());
+            return;
+        }
 
-            // v2: глобальные настройки + якорь времени + экраны с таймером
-            GLOBAL_VOLUME = in.readFloat();
-            HEAR_RADIUS = in.readInt();
-            SERVER_NOW_MS = in.readLong();
-            CLIENT_RECV_MS = System.currentTimeMillis();
+        // дельта до снапшота или не новее уже применённого — снапшот/дельта выше её уже покрывают
+        long revision = update.revision();
+        if (REVISION < 0 || revision <= REVISION) {
+            if (DEBUG) System.out.println("[Collins] Stale delta " + update.getClass().getSimpleName()
+                    + " rev=" + revision + " have=" + REVISION);
+            return;
+        }
 
-            int count = in.readInt();
-            if (count < 0 || count > 10_000) {
-                if (DEBUG) System.out.println("[Collins] Bad screen count=" + count);
-                return;
+        if (update instanceof SyncDecoder.Upsert u) {
+            anchor(u.serverNowMs(), u.recvMs());
+            SCREENS.put(u.key(), u.state());
+            VideoScreenManager.applyUpsert(u.key(), u.state());
+        } else if (update instanceof SyncDecoder.Remove r) {
+            anchor(r.serverNowMs(), r.recvMs());
+            SCREENS.remove(r.key());
+            VideoScreenManager.applyRemove(r.key());
+        } else if (update instanceof SyncDecoder.Playback p) {
+            anchor(p.serverNowMs(), p.recvMs());
+            ScreenState old = SCREENS.get(p.key());
+            if (old == null) {
+                if (DEBUG) System.out.println("[Collins] PLAYBACK for unknown screen: " + p.key());
+            } else {
+                ScreenState st = new ScreenState(
+                        old.name(), old.world(),
+                        old.x1(), old.y1(), old.z1(),
+                        old.x2(), old.y2(), old.z2(),
+                        old.axis(),
+                        old.url(),
+                        p.playing(),
+                        p.loop(),
+                        p.volume(),
+                        p.startEpochMs(),
+                        p.basePosMs()
+                );
+                SCREENS.put(p.key(), st);
+                VideoScreenManager.applyUpsert(p.key(), st);
             }
+        } else if (update instanceof SyncDecoder.Globals g) {
+            anchor(g.serverNowMs(), g.recvMs());
+            GLOBAL_VOLUME = g.globalVolume();
+            HEAR_RADIUS = g.hearRadius();
+        }
 
-            SCREENS.clear();
-            for (int i = 0; i < count; i++) {
-                String name = in.readUTF();
-                String world = in.readUTF();
-
-                int x1 = in.readInt(), y1 = in.readInt(), z1 = in.readInt();
-                int x2 = in.readInt(), y2 = in.readInt(), z2 = in.readInt();
-
-                byte axis = in.readByte();
-                String url = in.readUTF();
-
-                boolean playing = in.readBoolean();
-                boolean loop = in.readBoolean();
-                float volume = in.readFloat();
-
-                long startEpochMs = in.readLong();
-                long basePosMs = in.readLong();
-
-                SCREENS.put(name.toLowerCase(), new ScreenState(
-                        name, world,
-                        x1, y1, z1,
-                        x2, y2, z2,
-                        axis,
-                        url,
-                        playing,
-                        loop,
-                        volume,
-                        startEpochMs,
-                        basePosMs
-                ));
-            }
+        REVISION = revision;
+        if (DEBUG) System.out.println("[Collins] DELTA v3 " + update.getClass().getSimpleName() + " rev=" + revision);
+    }
 
-            org.sawiq.collins.fabric.client.video.VideoScreenManager.applySync(SCREENS);
-            if (DEBUG) System.out.println("[Collins] SYNC v2 received: " + count + " screens");
-        }
+    // якорь времени есть в каждом сообщении v3
+    private static void anchor(long serverNowMs, long recvMs) {
+        SERVER_NOW_MS = serverNowMs;
+        CLIENT_RECV_MS = recvMs;
     }
 }
@@ -0,0 +1,101 @@
+package org.sawiq.collins.fabric.client.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение тела пакета v3 (пара к CompactWriter плагина): varint, zigzag, строки varint длина + UTF-8.
+ * Курсор — позиция буфера; выход за конец даёт BufferUnderflowException, как и обрезанный пакет.
+ */
+final class CompactReader {
+
+    static final int FLAG_DEFLATE = 1;
+
+    private final ByteBuffer buf;
+
+    CompactReader(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    /** Сжатое тело: varint исходной длины + deflate. */
+    static CompactReader inflate(ByteBuffer src, int maxBytes) throws DataFormatException {
+        CompactReader r = new CompactReader(src);
+        int rawLen = r.readVarInt();
+        if (rawLen < 0 || rawLen > maxBytes) throw new DataFormatException("bad raw len " + rawLen);
+
+        byte[] out = new byte[rawLen];
+        Inflater inf = new Inflater();
+        try {
+            inf.setInput(src);
+            int n = 0;
+            while (n < rawLen && !inf.finished()) {
+                int got = inf.inflate(out, n, rawLen - n);
+                if (got == 0 && (inf.needsInput() || inf.needsDictionary())) break;
+                n += got;
+            }
+            if (n != rawLen) throw new DataFormatException("short inflate " + n + "/" + rawLen);
+        } finally {
+            inf.end();
+        }
+        return new CompactReader(ByteBuffer.wrap(out));
+    }
+
+    byte readByte() {
+        return buf.get();
+    }
+
+    int readInt() {
+        return buf.getInt();
+    }
+
+    long readLong() {
+        return buf.getLong();
+    }
+
+    float readFloat() {
+        return buf.getFloat();
+    }
+
+    int readVarInt() {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalStateException("varint too long");
+    }
+
+    long readVarLong() {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalStateException("varlong too long");
+    }
+
+    int readZigZag() {
+        int v = readVarInt();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    String readString() {
+        int len = readVarInt();
+        if (len < 0 || len > buf.remaining()) throw new IllegalStateException("bad string len " + len);
+
+        String s;
+        if (buf.hasArray()) {
+            s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+        } else {
+            byte[] b = new byte[len];
+            buf.get(buf.position(), b);
+            s = new String(b, StandardCharsets.UTF_8);
+        }
+        buf.position(buf.position() + len);
+        return s;
+    }
+}
@@ -0,0 +1,291 @@
+package org.sawiq.collins.fabric.client.net;
+
+import org.sawiq.collins.fabric.client.state.ScreenState;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Разбор пакета collins:main на сетевом потоке, прямо из буфера пакета (без копий обёртки и тела).
+ * Результат — готовое обновление; на клиентский поток уходит только его применение (CollinsNet).
+ * Повторяющиеся строки (миры, url) берутся из пула: одинаковые экраны в разных пакетах ссылаются
+ * на одни и те же строки, и сравнение состояний при применении не идёт по символам.
+ */
+final class SyncDecoder {
+
+    private static final boolean DEBUG = false;
+
+    // v3 типы сообщений (MSG_SYNC = 1 — полный синк v1/v2)
+    static final byte MSG_SYNC = 1;
+    static final byte MSG_SNAPSHOT = 2;
+    static final byte MSG_UPSERT = 3;
+    static final byte MSG_REMOVE = 4;
+    static final byte MSG_PLAYBACK = 5;
+    static final byte MSG_GLOBALS = 6;
+
+    private static final int MAX_SCREENS = 10_000;
+    // пул строк: миров и url немного, при переполнении просто начинаем заново
+    private static final int MAX_INTERNED = 4096;
+    private static final Map<String, String> INTERN = new ConcurrentHashMap<>();
+
+    /** Что пришло. revision -1 — полный синк v1/v2 (без ревизий); recvMs — время приёма на сетевом потоке. */
+    sealed interface Update permits Full, Upsert, Remove, Playback, Globals {
+        long revision();
+    }
+
+    /** Полный список экранов (v1/v2 SYNC или v3 SNAPSHOT); ключи — имена в нижнем регистре. */
+    record Full(int version, long revision, float globalVolume, int hearRadius, long serverNowMs, long recvMs,
+                Map<String, ScreenState> screens) implements Update {
+    }
+
+    record Upsert(long revision, long serverNowMs, long recvMs, String key, ScreenState state) implements Update {
+    }
+
+    record Remove(long revision, long serverNowMs, long recvMs, String key) implements Update {
+    }
+
+    record Playback(long revision, long serverNowMs, long recvMs, String key,
+                    boolean playing, boolean loop, float volume, long startEpochMs, long basePosMs) implements Update {
+    }
+
+    record Globals(long revision, long serverNowMs, long recvMs, float globalVolume, int hearRadius) implements Update {
+    }
+
+    private SyncDecoder() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /** Пакет целиком (COLL + len + inner). null — не наш, битый или неподдерживаемый (соединение не рвём). */
+    static Update decode(ByteBuffer packet) {
+        try {
+            ByteBuffer b = packet.slice().order(ByteOrder.BIG_ENDIAN);
+            if (b.remaining() < 8) return null; // 4 magic + 4 len
+            if (b.get() != 'C' || b.get() != 'O' || b.get() != 'L' || b.get() != 'L') return null;
+
+            int len = b.getInt();
+            if (len < 0 || len > CollinsNet.MAX_PACKET_BYTES) {
+                dbg("Bad len=" + len);
+                return null;
+            }
+            if (b.remaining() < len) {
+                dbg("Not enough bytes. need=" + len + " avail=" + b.remaining());
+                return null;
+            }
+
+            ByteBuffer inner = b.slice(b.position(), len).order(ByteOrder.BIG_ENDIAN);
+            if (inner.remaining() < 5) return null;
+            byte msg = inner.get(0);
+            int version = inner.getInt(1);
+
+            long recvMs = System.currentTimeMillis();
+            if (version == 3) return decodeV3(inner, recvMs);
+            if (msg == MSG_SYNC && (version == 1 || version == 2)) return decodeLegacy(inner, version, recvMs);
+
+            dbg("Unsupported msg=" + msg + " ver=" + version);
+            return null;
+        } catch (Exception e) {
+            dbg("Failed to parse packet: " + e);
+            return null;
+        }
+    }
+
+    static String intern(String s) {
+        String prev = INTERN.get(s);
+        if (prev != null) return prev;
+        if (INTERN.size() >= MAX_INTERNED) INTERN.clear();
+        prev = INTERN.putIfAbsent(s, s);
+        return prev != null ? prev : s;
+    }
+
+    // ==================== v3 ====================
+
+    /**
+     * v3: byte msg, int version, long revision, long serverNowMs, byte flags, дальше тело по типу
+     * в компактной кодировке ({@link CompactReader}, формат — в SyncEncoder плагина).
+     */
+    private static Update decodeV3(ByteBuffer b, long recvMs) throws Exception {
+        byte msg = b.get();
+        b.getInt(); // version
+        long revision = b.getLong();
+        long serverNowMs = b.getLong();
+
+        int flags = b.get();
+        CompactReader in = (flags & CompactReader.FLAG_DEFLATE) != 0
+                ? CompactReader.inflate(b, CollinsNet.MAX_PACKET_BYTES)
+                : new CompactReader(b);
+
+        switch (msg) {
+            case MSG_SNAPSHOT -> {
+                float globalVolume = in.readFloat();
+                int hearRadius = in.readVarInt();
+
+                String[] strings = readStrings(in);
+                int count = in.readVarInt();
+                if (count < 0 || count > MAX_SCREENS) {
+                    dbg("Bad screen count=" + count);
+                    return null;
+                }
+
+                Map<String, ScreenState> screens = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    ScreenState st = readScreen(in, strings);
+                    screens.put(st.name().toLowerCase(), st);
+                }
+                dbg("SNAPSHOT v3 decoded: rev=" + revision + " screens=" + count
+                        + " deflate=" + ((flags & CompactReader.FLAG_DEFLATE) != 0));
+                return new Full(3, revision, globalVolume, hearRadius, serverNowMs, recvMs, screens);
+            }
+            case MSG_UPSERT -> {
+                String[] strings = readStrings(in);
+                ScreenState st = readScreen(in, strings);
+                return new Upsert(revision, serverNowMs, recvMs, st.name().toLowerCase(), st);
+            }
+            case MSG_REMOVE -> {
+                return new Remove(revision, serverNowMs, recvMs, in.readString().toLowerCase());
+            }
+            case MSG_PLAYBACK -> {
+                String key = in.readString().toLowerCase();
+                int pf = in.readByte();
+                float volume = in.readFloat();
+                long startEpochMs = in.readVarLong();
+                long basePosMs = in.readVarLong();
+                return new Playback(revision, serverNowMs, recvMs, key, (pf & 1) != 0, (pf & 2) != 0,
+                        volume, startEpochMs, basePosMs);
+            }
+            case MSG_GLOBALS -> {
+                float globalVolume = in.readFloat();
+                int hearRadius = in.readVarInt();
+                return new Globals(revision, serverNowMs, recvMs, globalVolume, hearRadius);
+            }
+            default -> {
+                dbg("Unsupported msg=" + msg + " ver=3");
+                return null;
+            }
+        }
+    }
+
+    // таблица строк пакета: миры и префиксы url
+    private static String[] readStrings(CompactReader in) {
+        int n = in.readVarInt();
+        if (n < 0 || n > 2 * MAX_SCREENS) throw new IllegalStateException("bad string table size " + n);
+        String[] out = new String[n];
+        for (int i = 0; i < n; i++) out[i] = in.readString();
+        return out;
+    }
+
+    private static ScreenState readScreen(CompactReader in, String[] strings) {
+        String name = in.readString();
+        String world = intern(strings[in.readVarInt()]);
+
+        int x1 = in.readZigZag(), y1 = in.readZigZag(), z1 = in.readZigZag();
+        int x2 = x1 + in.readZigZag(), y2 = y1 + in.readZigZag(), z2 = z1 + in.readZigZag();
+
+        byte axis = in.readByte();
+        String url = intern(strings[in.readVarInt()] + in.readString());
+
+        int pf = in.readByte();
+        float volume = in.readFloat();
+
+        long startEpochMs = in.readVarLong();
+        long basePosMs = in.readVarLong();
+
+        return new ScreenState(
+                name, world,
+                x1, y1, z1,
+                x2, y2, z2,
+                axis,
+                url,
+                (pf & 1) != 0,
+                (pf & 2) != 0,
+                volume,
+                startEpochMs,
+                basePosMs
+        );
+    }
+
+    // ==================== v1/v2 ====================
+
+    /** Старый сервер: DataInputStream (readUTF) прямо по массиву пакета, если он есть; иначе одна копия. */
+    private static Update decodeLegacy(ByteBuffer inner, int version, long recvMs) throws Exception {
+        byte[] arr;
+        int off;
+        if (inner.hasArray()) {
+            arr = inner.array();
+            off = inner.arrayOffset() + inner.position();
+        } else {
+            arr = new byte[inner.remaining()];
+            inner.get(inner.position(), arr);
+            off = 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(arr, off, inner.remaining()))) {
+            in.readByte(); // msg
+            in.readInt();  // version
+
+            // v1: только экраны, без таймера и глобальных настроек
+            float globalVolume = 1.0f;
+            int hearRadius = 100;
+            long serverNowMs = 0L;
+            long recv = 0L;
+            if (version == 2) {
+                // v2: глобальные настройки + якорь времени + экраны с таймером
+                globalVolume = in.readFloat();
+                hearRadius = in.readInt();
+                serverNowMs = in.readLong();
+                recv = recvMs;
+            }
+
+            int count = in.readInt();
+            if (count < 0 || count > MAX_SCREENS) {
+                dbg("Bad screen count=" + count);
+                return null;
+            }
+
+            Map<String, ScreenState> screens = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String world = intern(in.readUTF());
+
+                int x1 = in.readInt(), y1 = in.readInt(), z1 = in.readInt();
+                int x2 = in.readInt(), y2 = in.readInt(), z2 = in.readInt();
+
+                byte axis = in.readByte();
+                String url = intern(in.readUTF());
+
+                boolean playing = in.readBoolean();
+                boolean loop = in.readBoolean();
+                float volume = in.readFloat();
+
+                long startEpochMs = 0L;
+                long basePosMs = 0L;
+                if (version == 2) {
+                    startEpochMs = in.readLong();
+                    basePosMs = in.readLong();
+                }
+
+                screens.put(name.toLowerCase(), new ScreenState(
+                        name, world,
+                        x1, y1, z1,
+                        x2, y2, z2,
+                        axis,
+                        url,
+                        playing,
+                        loop,
+                        volume,
+                        startEpochMs,
+                        basePosMs
+                ));
+            }
+
+            dbg("SYNC v" + version + " decoded: " + count + " screens");
+            return new Full(version, -1L, globalVolume, hearRadius, serverNowMs, recv, screens);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Стадии после demux/decode, каждая в своём потоке, с ограниченными очередями между ними.
+ * Поток плеера только читает граббер и копирует кадр/сэмплы в свободный элемент пула стадии
+ * (буферы граббера переиспользуются на следующем grab). Пул исчерпан — поток плеера ждёт:
+ * это и есть backpressure, видео дополнительно упирается в {@code FrameSink.canAcceptFrame}.
+ * Аудио: громкость, PCM и запись в линию — линия, которая не берёт данные, больше не держит видео.
+ * Видео: конвертация BGR24 -> ABGR (только без directRgba; RGBA готовит сам swscale внутри grab).
+ * Задержки стадий — в {@link VideoStats}.
+ */
+final class DecodePipeline implements AutoCloseable {
+
+    private static final boolean DEBUG = false;
+
+    // ~0.5 с звука при кадре AAC 1024 сэмпла / 48 кГц
+    private static final int AUDIO_CHUNKS = 24;
+    // кадры между декодером и конвертацией: хватает, чтобы стадии шли внахлёст
+    private static final int VIDEO_SLOTS = 3;
+    private static final long POLL_MS = 10L;
+    private static final long DRAIN_TIMEOUT_MS = 2000L;
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    // ==================== Аудио ====================
+
+    /** Сэмплы одного кадра, interleaved. */
+    static final class AudioChunk {
+        short[] data = new short[4096];
+        int len;
+
+        /** Копия из кадра JavaCV: mono, planar L/R или interleaved (как раньше в VideoAudioPlayer). */
+        boolean fill(Buffer[] samples, int channelsWanted) {
+            len = 0;
+            if (samples == null || samples.length == 0 || !(samples[0] instanceof ShortBuffer)) return false;
+
+            if (channelsWanted > 1 && samples.length >= 2 && samples[1] instanceof ShortBuffer) {
+                ShortBuffer l = ((ShortBuffer) samples[0]).duplicate();
+                ShortBuffer r = ((ShortBuffer) samples[1]).duplicate();
+                int n = Math.min(l.remaining(), r.remaining());
+                ensure(n * 2);
+                for (int i = 0; i < n; i++) {
+                    data[len++] = l.get();
+                    data[len++] = r.get();
+                }
+                return len > 0;
+            }
+
+            ShortBuffer sb = ((ShortBuffer) samples[0]).duplicate();
+            int n = sb.remaining();
+            ensure(n);
+            sb.get(data, 0, n);
+            len = n;
+            return len > 0;
+        }
+
+        private void ensure(int n) {
+            if (data.length < n) data = new short[n];
+        }
+    }
+
+    /** Стадия аудио: предбуфер до готовности видео, затем старт часов воспроизведения и запись в линию. */
+    final class AudioStage {
+        private final ArrayBlockingQueue<AudioChunk> free = new ArrayBlockingQueue<>(AUDIO_CHUNKS);
+        private final ArrayBlockingQueue<AudioChunk> filled = new ArrayBlockingQueue<>(AUDIO_CHUNKS);
+        private final VideoAudioPlayer audio;
+        private final Thread thread;
+        private boolean clockStarted = false;
+
+        private AudioStage(VideoAudioPlayer audio) {
+            this.audio = audio;
+            for (int i = 0; i < AUDIO_CHUNKS; i++) free.add(new AudioChunk());
+            thread = new Thread(this::loop, "Collins-Audio");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+        }
+
+        /** Поток плеера: скопировать сэмплы кадра и отдать стадии. false — остановка. */
+        boolean submit(Buffer[] samples, int channels) {
+            AudioChunk c = take(free);
+            if (c == null) return false;
+            if (!c.fill(samples, channels)) {
+                free.offer(c);
+                return true;
+            }
+            filled.offer(c);
+            return true;
+        }
+
+        private void loop() {
+            while (!stop.get()) {
+                AudioChunk c;
+                try {
+                    c = filled.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (c == null) continue;
+
+                long t0 = System.nanoTime();
+                if (!sink.isBufferReady()) {
+                    audio.prebufferSamples(c.data, c.len);
+                } else {
+                    if (!clockStarted) {
+                        clockStarted = true;
+                        sink.onPlaybackClockStart(System.nanoTime());
+                    }
+                    if (!audio.isStarted()) audio.startPlayback();
+                    if (audio.hasPrebuffer()) audio.flushPrebuffer();
+                    audio.writeSamples(c.data, c.len);
+                }
+                VideoStats.AUDIO_STAGE.record((System.nanoTime() - t0) / 1000L);
+                free.offer(c);
+                if (Thread.currentThread().isInterrupted()) break;
+            }
+        }
+    }
+
+    // ==================== Видео ====================
+
+    /** Декодированный кадр BGR24, ждущий конвертации. */
+    private static final class VideoSlot {
+        ByteBuffer buf;
+        int w;
+        int h;
+        int stride;
+        long tsUs;
+    }
+
+    /** Стадия конвертации: BGR24 -> ABGR в слот кольца кадров экрана. */
+    final class ConvertStage {
+        private final ArrayBlockingQueue<VideoSlot> free = new ArrayBlockingQueue<>(VIDEO_SLOTS);
+        private final ArrayBlockingQueue<VideoSlot> filled = new ArrayBlockingQueue<>(VIDEO_SLOTS);
+        private final PixelKernel kernel;
+        private final Thread thread;
+
+        private ConvertStage(PixelKernel kernel) {
+            this.kernel = kernel;
+            for (int i = 0; i < VIDEO_SLOTS; i++) free.add(new VideoSlot());
+            thread = new Thread(this::loop, "Collins-Convert");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /** Поток плеера: скопировать кадр и отдать стадии. false — остановка. */
+        boolean submit(ByteBuffer src, int w, int h, int stride, long tsUs) {
+            VideoSlot s = take(free);
+            if (s == null) return false;
+
+            int rowBytes = stride > 0 ? stride : w * 3;
+            int bytes = Math.min(src.limit(), rowBytes * h);
+            if (s.buf == null || s.buf.capacity() < bytes) {
+                s.buf = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            }
+            s.buf.clear();
+            s.buf.put(0, src, 0, bytes);
+            s.buf.limit(bytes);
+            s.w = w;
+            s.h = h;
+            s.stride = stride;
+            s.tsUs = tsUs;
+            filled.offer(s);
+            return true;
+        }
+
+        private void loop() {
+            while (!stop.get()) {
+                VideoSlot s;
+                try {
+                    s = filled.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (s == null) continue;
+
+                // слот кольца: ждём render thread, как раньше ждал поток плеера
+                ByteBuffer out = null;
+                while (!stop.get() && !Thread.currentThread().isInterrupted()) {
+                    out = sink.borrowBuffer();
+                    if (out != null) break;
+                    LockSupport.parkNanos(1_000_000L); // 1ms
+                }
+
+                // кольцо другого размера (смена LOD ещё не применена на render thread) — кадр пропускаем
+                if (out != null && out.capacity() == s.w * s.h * 4) {
+                    long t0 = System.nanoTime();
+                    kernel.bgr24ToAbgr(s.buf, s.stride, s.w, s.h, out);
+                    VideoStats.CONVERT_STAGE.record((System.nanoTime() - t0) / 1000L);
+                    sink.onFrame(out, s.w, s.h, s.tsUs);
+                    onFrame.run();
+                }
+                free.offer(s);
+                if (Thread.currentThread().isInterrupted()) break;
+            }
+        }
+    }
+
+    // ==================== Пайплайн ====================
+
+    private final VideoPlayer.FrameSink sink;
+    private final BooleanSupplier running;
+    private final Runnable onFrame;
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+
+    final AudioStage audio;
+    // null в режиме directRgba: кадр копируется в кольцо прямо в потоке плеера
+    final ConvertStage convert;
+
+    /**
+     * @param kernel  конвертер BGR24; null — стадии конвертации нет
+     * @param onFrame вызывается после публикации кадра стадией конвертации (первый кадр и т.п.)
+     */
+    DecodePipeline(VideoPlayer.FrameSink sink, VideoAudioPlayer audioOut, PixelKernel kernel,
+                   BooleanSupplier running, Runnable onFrame) {
+        this.sink = sink;
+        this.running = running;
+        this.onFrame = onFrame;
+        this.audio = new AudioStage(audioOut);
+        this.convert = kernel != null ? new ConvertStage(kernel) : null;
+    }
+
+    /** Свободный элемент пула; ждёт, пока стадия не освободит (backpressure). null — остановка. */
+    private <T> T take(ArrayBlockingQueue<T> pool) {
+        while (!stop.get() && running.getAsBoolean()) {
+            try {
+                T t = pool.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (t != null) return t;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /** Конец файла: дать стадиям доиграть/дорисовать то, что уже в очередях. */
+    void drain() {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_MS * 1_000_000L;
+        while (running.getAsBoolean() && System.nanoTime() < deadline) {
+            boolean audioBusy = !audio.filled.isEmpty() || audio.free.remainingCapacity() > 0;
+            boolean videoBusy = convert != null && (!convert.filled.isEmpty() || convert.free.remainingCapacity() > 0);
+            if (!audioBusy && !videoBusy) return;
+            try {
+                Thread.sleep(5L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        stop.set(true);
+        join(audio.thread);
+        if (convert != null) join(convert.thread);
+        dbg("pipeline: closed");
+    }
+
+    private static void join(Thread t) {
+        // прерывание снимает стадию с ожидания линии/кольца
+        t.interrupt();
+        try {
+            t.join(500L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
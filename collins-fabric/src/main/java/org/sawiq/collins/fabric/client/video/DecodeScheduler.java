@@ -0,0 +1,219 @@
+package org.sawiq.collins.fabric.client.video;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.util.math.Vec3d;
+import org.sawiq.collins.fabric.client.config.CollinsClientConfig;
+import org.sawiq.collins.fabric.client.state.ScreenState;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Общий планировщик декодеров на клиенте.
+ * Раз в {@link #RANK_INTERVAL_TICKS} тиков ранжирует играющие экраны по видимому размеру
+ * (площадь / расстояние², с поправкой на то, смотрит ли игрок в их сторону) и раздаёт гранты:
+ * FULL — полный буфер кадров и высокий приоритет потока,
+ * REDUCED — маленький буфер, обычный приоритет, каждый второй кадр,
+ * SUSPENDED — декодер остановлен, на экране остаётся последний кадр.
+ * Ограничения: число одновременных декодеров и суммарная память колец кадров (из конфига).
+ * Потоки FFmpeg внутри декодера ({@link #decoderThreads}) делятся между активными декодерами.
+ * Только client thread.
+ */
+final class DecodeScheduler {
+
+    private static final boolean DEBUG = false;
+
+    enum Grant { FULL, REDUCED, SUSPENDED }
+
+    static final int RANK_INTERVAL_TICKS = 20;
+
+    // ёмкость кольца кадров для гранта (см. VideoScreen)
+    static final int FULL_RING_FRAMES = 45;
+    static final int REDUCED_RING_FRAMES = 20;
+
+    // экраны, которые уже декодируют, получают бонус — чтобы гранты не прыгали на границе
+    private static final double STICKY_BONUS = 1.3;
+    // экран вне поля зрения всё ещё слышно, но картинка ему почти не нужна
+    private static final double OFFSCREEN_FACTOR = 0.2;
+
+    // ядра, которые не отдаём декодерам: render thread и server/client tick
+    private static final int RESERVED_CORES = 2;
+    private static final int MAX_DECODER_THREADS = 8;
+
+    private static int ticks = 0;
+    // декодеров с грантом после последнего ранжирования (читают потоки плееров)
+    private static volatile int activeDecoders = 1;
+
+    private DecodeScheduler() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /** Лимит одновременных декодеров: из конфига или clamp(ядра / 2, 2, 8). */
+    static int maxDecoders() {
+        int cfg = CollinsClientConfig.get().maxDecoders;
+        if (cfg > 0) return cfg;
+        int cores = Runtime.getRuntime().availableProcessors();
+        return VideoSizeUtil.clamp(cores / 2, 2, 8);
+    }
+
+    static long frameBudgetBytes() {
+        return Math.max(CollinsClientConfig.FRAME_MEMORY_BUDGET_MIN_MB, CollinsClientConfig.get().frameMemoryBudgetMb) * 1024L * 1024L;
+    }
+
+    /**
+     * Потоков FFmpeg на один декодер: из конфига или свободные ядра поровну на активные декодеры,
+     * REDUCED — вдвое меньше. Применяется при открытии граббера.
+     */
+    static int decoderThreads(Grant g) {
+        int cfg = CollinsClientConfig.get().decoderThreads;
+        if (cfg > 0) return cfg;
+        if (g == Grant.SUSPENDED) return 1;
+        int cores = Math.max(1, Runtime.getRuntime().availableProcessors() - RESERVED_CORES);
+        int n = VideoSizeUtil.clamp(cores / Math.max(1, activeDecoders), 1, MAX_DECODER_THREADS);
+        return g == Grant.REDUCED ? Math.max(1, n / 2) : n;
+    }
+
+    static int ringFrames(Grant g) {
+        return g == Grant.REDUCED ? REDUCED_RING_FRAMES : FULL_RING_FRAMES;
+    }
+
+    private record Candidate(VideoScreen screen, double score, long frameBytes) {}
+
+    /** Вызывается каждый тик из VideoScreenManager; ранжирует раз в RANK_INTERVAL_TICKS. */
+    static void tick(MinecraftClient client, Collection<VideoScreen> screens, Vec3d playerPos, int radiusBlocks) {
+        if (++ticks < RANK_INTERVAL_TICKS) return;
+        ticks = 0;
+        rank(client, screens, playerPos, radiusBlocks);
+    }
+
+    /** Перераспределить гранты на следующем тике (например, после sync). */
+    static void invalidate() {
+        ticks = RANK_INTERVAL_TICKS;
+    }
+
+    private static void rank(MinecraftClient client, Collection<VideoScreen> screens, Vec3d playerPos, int radiusBlocks) {
+        if (client == null || client.player == null || playerPos == null) return;
+
+        Vec3d eye = client.player.getEyePos();
+        Vec3d look = client.player.getRotationVec(1.0f);
+        double cosHalfFov = cosHalfHorizontalFov(client);
+        double r2 = radiusBlocks > 0 ? (double) radiusBlocks * radiusBlocks : Double.MAX_VALUE;
+
+        List<Candidate> list = new ArrayList<>();
+        for (VideoScreen s : screens) {
+            // ведомые экраны общего декодера своих потоков не имеют
+            if (s.isShareFollower()) continue;
+
+            ScreenState st = s.state();
+            if (st == null || !st.playing() || st.url() == null || st.url().isEmpty()
+                    || !VideoScreenManager.isCompatibleWithCurrentWorld(st, client)) {
+                // неиграющие не занимают слот; грант сбрасываем, чтобы старт не ждал ранжирования
+                s.setGrant(Grant.FULL);
+                continue;
+            }
+
+            // у ведущего общего декодера — лучший из экранов группы
+            double score = score(st, eye, look, cosHalfFov, r2);
+            for (VideoScreen f : s.shareFollowers()) {
+                score = Math.max(score, score(f.state(), eye, look, cosHalfFov, r2));
+            }
+            if (score < 0) continue; // вне радиуса экран сам остановится
+
+            if (s.isDecoding()) score *= STICKY_BONUS;
+
+            list.add(new Candidate(s, score, estimateFrameBytes(s, st)));
+        }
+
+        list.sort((a, b) -> Double.compare(b.score(), a.score()));
+
+        int maxDec = maxDecoders();
+        long budget = frameBudgetBytes();
+        long used = 0;
+        int decoders = 0;
+
+        for (Candidate c : list) {
+            Grant g;
+            long full = c.frameBytes() * FULL_RING_FRAMES;
+            long reduced = c.frameBytes() * REDUCED_RING_FRAMES;
+
+            if (decoders >= maxDec) {
+                g = Grant.SUSPENDED;
+            } else if (used + full <= budget && decoders < Math.max(1, maxDec / 2)) {
+                g = Grant.FULL;
+                used += full;
+                decoders++;
+            } else if (used + reduced <= budget) {
+                g = Grant.REDUCED;
+                used += reduced;
+                decoders++;
+            } else {
+                g = Grant.SUSPENDED;
+            }
+
+            if (c.screen().grant() != g) {
+                dbg("DecodeScheduler: " + c.screen().state().name() + " " + c.screen().grant() + " -> " + g
+                        + " score=" + String.format("%.4f", c.score()));
+            }
+            c.screen().setGrant(g);
+        }
+        activeDecoders = Math.max(1, decoders);
+    }
+
+    /** Видимый размер экрана: площадь / расстояние², вне поля зрения — с понижением; -1 если вне радиуса. */
+    private static double score(ScreenState st, Vec3d eye, Vec3d look, double cosHalfFov, double r2) {
+        if (st == null) return -1;
+
+        double cx = (st.minX() + st.maxX() + 1) * 0.5;
+        double cy = (st.minY() + st.maxY() + 1) * 0.5;
+        double cz = (st.minZ() + st.maxZ() + 1) * 0.5;
+
+        double dx = cx - eye.x;
+        double dy = cy - eye.y;
+        double dz = cz - eye.z;
+        double d2 = dx * dx + dy * dy + dz * dz;
+        if (d2 > r2) return -1;
+
+        double area = (double) st.blocksW() * st.blocksH();
+        double score = area / Math.max(1.0, d2);
+
+        double d = Math.sqrt(d2);
+        if (d > 1.0) {
+            // угол до центра экрана, с запасом на половину диагонали экрана
+            double cos = (dx * look.x + dy * look.y + dz * look.z) / d;
+            double halfDiag = 0.5 * Math.sqrt(area * 2.0);
+            double slack = Math.min(1.0, halfDiag / d);
+            if (cos + slack < cosHalfFov) score *= OFFSCREEN_FACTOR;
+        }
+        return score;
+    }
+
+    private static long estimateFrameBytes(VideoScreen s, ScreenState st) {
+        int w = s.texW();
+        int h = s.texH();
+        if (w <= 0 || h <= 0) {
+            // размер видео ещё неизвестен — считаем 16:9 на весь экран
+            VideoSizeUtil.Size size = VideoSizeUtil.pick(st.blocksW(), st.blocksH(), 16, 9);
+            w = size.w();
+            h = size.h();
+        }
+        return (long) w * h * 4L;
+    }
+
+    private static double cosHalfHorizontalFov(MinecraftClient client) {
+        double vfov = 70.0;
+        double aspect = 16.0 / 9.0;
+        try {
+            vfov = client.options.getFov().getValue();
+            int fw = client.getWindow().getFramebufferWidth();
+            int fh = client.getWindow().getFramebufferHeight();
+            if (fw > 0 && fh > 0) aspect = (double) fw / fh;
+        } catch (Exception ignored) {
+        }
+        double halfV = Math.toRadians(vfov) * 0.5;
+        double halfH = Math.atan(Math.tan(halfV) * aspect);
+        return Math.cos(Math.min(Math.PI, halfH));
+    }
+}
@@ -0,0 +1,241 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LRU файлов дискового кэша без обхода папки.
+ * Порядок и размеры берутся из {@link MediaIndex} (там же сохраняется время последнего проигрывания),
+ * дальше всё в памяти: доступ переставляет запись в хвост за O(1), суммарный размер ведётся счётчиком.
+ * Вытеснение — в фоновом потоке, с головы LRU; закреплённые (сейчас играющие) файлы пропускаются.
+ * Недокачанные файлы прогрессивного кэша ({@code <hash>.prog}) в индекс не попадают, но место занимают
+ * целиком — они в том же LRU под ключом {@code <hash>.prog} и вытесняются, пока их никто не качает.
+ */
+final class DiskCacheManager {
+
+    private static final boolean DEBUG = false;
+
+    private record Item(Path file, long size) {}
+
+    // access-order: голова — давно не игравшие
+    private static final LinkedHashMap<String, Item> LRU = new LinkedHashMap<>(64, 0.75f, true);
+    private static final Map<String, Integer> PINS = new HashMap<>();
+    private static boolean loaded = false;
+    private static long totalBytes = 0L;
+
+    private static final AtomicBoolean EVICT_QUEUED = new AtomicBoolean(false);
+    private static final ExecutorService EVICTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Collins-CacheEvict");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private DiskCacheManager() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    private static void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+
+        Path dir = VideoPlayer.getCacheDir();
+        loadPartials(dir);
+        List<MediaIndex.Entry> list = new ArrayList<>();
+        for (MediaIndex.Entry e : MediaIndex.snapshot().values()) {
+            if (e.hasFile()) list.add(e);
+        }
+        // сортировка один раз при загрузке, дальше порядок поддерживает сам LinkedHashMap
+        list.sort(Comparator.comparingLong(MediaIndex.Entry::lastAccessMs));
+        for (MediaIndex.Entry e : list) {
+            LRU.put(e.key(), new Item(dir.resolve(e.cacheFile()), e.fileSize()));
+            totalBytes += e.fileSize();
+        }
+        dbg("cache manager: loaded entries=" + LRU.size() + " bytes=" + totalBytes);
+    }
+
+    // недокачанные с прошлых запусков — в голову LRU, раньше всего остального
+    private static void loadPartials(Path dir) {
+        try (var s = Files.newDirectoryStream(dir, "*" + ProgressiveCache.EXT)) {
+            for (Path p : s) {
+                String key = partialKey(MediaIndex.keyOf(p.getFileName().toString()));
+                long size = Files.size(p);
+                LRU.put(key, new Item(p, size));
+                totalBytes += size;
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static String partialKey(String key) {
+        return key + ProgressiveCache.EXT;
+    }
+
+    /** Файл прогрессивного кэша начали (или продолжили) качать; size — выделенный на диске размер. */
+    static synchronized void partialAdded(String key, Path file, long size) {
+        ensureLoaded();
+        Item old = LRU.put(partialKey(key), new Item(file, size));
+        if (old != null) totalBytes -= old.size();
+        totalBytes += size;
+    }
+
+    /** Новый файл в кэше. */
+    static synchronized void added(String key, Path file) {
+        ensureLoaded();
+        // докачанный .prog переименован в этот файл
+        Item partial = LRU.remove(partialKey(key));
+        if (partial != null) totalBytes -= partial.size();
+        MediaIndex.putFile(key, file);
+        long size = 0L;
+        MediaIndex.Entry e = MediaIndex.get(key);
+        if (e != null) size = e.fileSize();
+        Item old = LRU.put(key, new Item(file, size));
+        if (old != null) totalBytes -= old.size();
+        totalBytes += size;
+    }
+
+    /** Файл начали проигрывать — в хвост LRU (и время доступа в индекс). */
+    static synchronized void accessed(String key) {
+        ensureLoaded();
+        LRU.get(key);
+        MediaIndex.touch(key);
+    }
+
+    /** Файл удалён снаружи (битый, удалён пользователем). */
+    static synchronized void removed(Path file) {
+        if (file == null) return;
+        ensureLoaded();
+        String key = MediaIndex.keyOf(file.getFileName().toString());
+        Item it = LRU.get(key);
+        if (it != null && it.file().getFileName().equals(file.getFileName())) {
+            LRU.remove(key);
+            totalBytes -= it.size();
+        }
+        MediaIndex.removeFile(file);
+    }
+
+    static synchronized void pin(String key) {
+        PINS.merge(key, 1, Integer::sum);
+    }
+
+    static synchronized void unpin(String key) {
+        PINS.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    // нельзя удалять: играет, или .prog сейчас качается (предзагрузка не закрепляет)
+    private static boolean busy(String lruKey) {
+        if (!lruKey.endsWith(ProgressiveCache.EXT)) return PINS.containsKey(lruKey);
+        String key = lruKey.substring(0, lruKey.length() - ProgressiveCache.EXT.length());
+        return PINS.containsKey(key) || ProgressiveCache.isActive(key);
+    }
+
+    private static void delete(Item v) {
+        try {
+            Files.deleteIfExists(v.file());
+            String name = v.file().getFileName().toString();
+            if (name.endsWith(ProgressiveCache.EXT)) {
+                Files.deleteIfExists(v.file().resolveSibling(MediaIndex.keyOf(name) + ProgressiveCache.MAP_EXT));
+            }
+        } catch (Exception ignored) {
+        }
+        MediaIndex.removeFile(v.file());
+    }
+
+    static synchronized long totalBytes() {
+        ensureLoaded();
+        return totalBytes;
+    }
+
+    static synchronized int count() {
+        ensureLoaded();
+        return LRU.size();
+    }
+
+    /** Вытеснить лишнее в фоне; повторные запросы, пока задача в очереди, схлопываются. */
+    static void evictAsync(long maxBytes) {
+        if (!EVICT_QUEUED.compareAndSet(false, true)) return;
+        EVICTOR.execute(() -> {
+            EVICT_QUEUED.set(false);
+            evict(maxBytes);
+        });
+    }
+
+    private static void evict(long maxBytes) {
+        List<Item> victims = new ArrayList<>();
+        synchronized (DiskCacheManager.class) {
+            ensureLoaded();
+            if (totalBytes <= maxBytes) return;
+
+            Iterator<Map.Entry<String, Item>> it = LRU.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Item> en = it.next();
+                if (busy(en.getKey())) continue;
+                it.remove();
+                totalBytes -= en.getValue().size();
+                victims.add(en.getValue());
+            }
+        }
+
+        // удаление файлов — без блокировки
+        for (Item v : victims) {
+            delete(v);
+            dbg("cache manager: evicted " + v.file() + " size=" + v.size());
+        }
+    }
+
+    /**
+     * Удалить все незакреплённые файлы кэша и временные файлы без владельца.
+     * @return сколько байт освобождено (по индексу)
+     */
+    static long clear(Path dir) {
+        List<Item> victims = new ArrayList<>();
+        long freed = 0L;
+        synchronized (DiskCacheManager.class) {
+            ensureLoaded();
+            Iterator<Map.Entry<String, Item>> it = LRU.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Item> en = it.next();
+                if (busy(en.getKey())) continue;
+                it.remove();
+                totalBytes -= en.getValue().size();
+                freed += en.getValue().size();
+                victims.add(en.getValue());
+            }
+        }
+        for (Item v : victims) {
+            delete(v);
+        }
+
+        // недокачанные .part/.prog в индекс не попадают — подметаем их обходом (явное действие пользователя)
+        try (var s = Files.list(dir)) {
+            for (Path p : s.toList()) {
+                String n = p.getFileName().toString();
+                if (!Files.isRegularFile(p) || MediaIndex.isCacheFileName(n) || n.startsWith(MediaIndex.FILE_NAME)) continue;
+                String key = MediaIndex.keyOf(n);
+                synchronized (DiskCacheManager.class) {
+                    if (busy(partialKey(key))) continue;
+                }
+                try {
+                    long sz = Files.size(p);
+                    Files.deleteIfExists(p);
+                    freed += sz;
+                } catch (Exception ignored) {
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        return freed;
+    }
+}
@@ -0,0 +1,185 @@
+package org.sawiq.collins.fabric.client.video;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.sawiq.collins.fabric.client.config.CollinsClientConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Прогрев FFmpeg при старте клиента, чтобы первое видео не ждало распаковку и загрузку нативных
+ * библиотек JavaCPP (секунды) и не подтормаживало игру.
+ * В фоне: загрузка natives, запись крошечного клипа в память (mpeg4 + aac, через swscale/swresample)
+ * и его декод тем же путём, что и у плеера — формат пикселей, масштабирование, конвертация кадра,
+ * PCM для аудиолинии (линия открывается, но не запускается — звука нет).
+ * Время прогрева — {@link #warmupMs()} (видно в /collinsc stats).
+ */
+public final class FFmpegWarmup {
+
+    private static final boolean DEBUG = false;
+
+    private static final int CLIP_W = 64;
+    private static final int CLIP_H = 36;
+    private static final int CLIP_FRAMES = 24;
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    // проходов декода по клипу (с перемоткой в начало): конвертация успевает дойти до JIT
+    private static final int DECODE_PASSES = 8;
+
+    private static volatile boolean started = false;
+    private static volatile long warmupMs = -1L;
+
+    private FFmpegWarmup() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /** Запустить прогрев (повторный вызов ничего не делает). */
+    public static synchronized void start() {
+        if (started) return;
+        started = true;
+
+        Thread t = new Thread(FFmpegWarmup::run, "Collins-FFmpegWarmup");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    /** Сколько занял прогрев, мс; -1 — ещё идёт или не удался. */
+    public static long warmupMs() {
+        return warmupMs;
+    }
+
+    private static void run() {
+        long t0 = System.nanoTime();
+        try {
+            // распаковка и загрузка natives (avutil/avcodec/avformat/swscale/swresample)
+            FFmpegFrameGrabber.tryLoad();
+            FFmpegFrameRecorder.tryLoad();
+            long tLoad = System.nanoTime();
+
+            byte[] clip = recordClip();
+            long tRecord = System.nanoTime();
+
+            int frames = decodeClip(clip);
+            long tDecode = System.nanoTime();
+
+            warmupMs = (tDecode - t0) / 1_000_000L;
+            dbg("ffmpeg warmup: " + warmupMs + " ms (natives=" + (tLoad - t0) / 1_000_000L
+                    + " record=" + (tRecord - tLoad) / 1_000_000L
+                    + " decode=" + (tDecode - tRecord) / 1_000_000L
+                    + " clip=" + clip.length + "b frames=" + frames + ")");
+        } catch (Throwable e) {
+            // без прогрева плеер всё равно загрузит natives сам при первом видео
+            dbg("ffmpeg warmup: failed " + e);
+        }
+    }
+
+    /** Клип в памяти: градиент + тон, ключевой кадр каждые 6 кадров (для перемотки). */
+    private static byte[] recordClip() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64 * 1024);
+        try (FFmpegFrameRecorder rec = new FFmpegFrameRecorder(bos, CLIP_W, CLIP_H, CHANNELS)) {
+            rec.setFormat("matroska");
+            rec.setVideoCodec(avcodec.AV_CODEC_ID_MPEG4);
+            rec.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+            rec.setFrameRate(24);
+            rec.setGopSize(6);
+            rec.setAudioCodec(avcodec.AV_CODEC_ID_AAC);
+            rec.setSampleRate(SAMPLE_RATE);
+            rec.setAudioBitrate(64_000);
+            rec.start();
+
+            Frame img = new Frame(CLIP_W, CLIP_H, Frame.DEPTH_UBYTE, 3);
+            ByteBuffer px = (ByteBuffer) img.image[0];
+            int samplesPerFrame = SAMPLE_RATE / 24;
+            ShortBuffer pcm = ShortBuffer.allocate(samplesPerFrame * CHANNELS);
+            int stride = img.imageStride;
+
+            for (int i = 0; i < CLIP_FRAMES; i++) {
+                for (int y = 0; y < CLIP_H; y++) {
+                    int row = y * stride;
+                    for (int x = 0; x < CLIP_W; x++) {
+                        int o = row + x * 3;
+                        px.put(o, (byte) (x * 4 + i));
+                        px.put(o + 1, (byte) (y * 7));
+                        px.put(o + 2, (byte) (i * 10));
+                    }
+                }
+                rec.record(img);
+
+                pcm.clear();
+                for (int s = 0; s < samplesPerFrame; s++) {
+                    short v = (short) (Math.sin((i * samplesPerFrame + s) * 0.05) * 3000);
+                    pcm.put(v).put(v);
+                }
+                pcm.flip();
+                rec.recordSamples(SAMPLE_RATE, CHANNELS, pcm);
+            }
+            rec.stop();
+        }
+        return bos.toByteArray();
+    }
+
+    /** Декод как в VideoPlayer.playOnce. @return сколько видеокадров прошло через конвертацию */
+    private static int decodeClip(byte[] clip) throws Exception {
+        boolean directRgba = CollinsClientConfig.get().directRgbaDecode;
+        PixelKernel kernel = directRgba ? null : PixelKernels.create();
+
+        // вывод больше исходника — swscale масштабирует, как при подгонке под экран
+        int w = CLIP_W * 2;
+        int h = CLIP_H * 2;
+        ByteBuffer out = ByteBuffer.allocateDirect(w * h * 4);
+
+        VideoAudioPlayer audio = null;
+        try {
+            audio = new VideoAudioPlayer(SAMPLE_RATE, CHANNELS);
+        } catch (Exception e) {
+            // нет аудиоустройства — прогреваем только видео
+            dbg("ffmpeg warmup: no audio line " + e);
+        }
+
+        DecodePipeline.AudioChunk chunk = new DecodePipeline.AudioChunk();
+        int frames = 0;
+        // maximumSize = длина клипа: JavaCV ставит AVIO seek (reset() + skip()), иначе setTimestamp на втором проходе падает
+        try (FFmpegFrameGrabber g = new FFmpegFrameGrabber(new ByteArrayInputStream(clip), clip.length)) {
+            g.setFormat("matroska");
+            g.setPixelFormat(directRgba ? avutil.AV_PIX_FMT_RGBA : avutil.AV_PIX_FMT_BGR24);
+            g.start();
+            g.setImageWidth(w);
+            g.setImageHeight(h);
+
+            for (int pass = 0; pass < DECODE_PASSES; pass++) {
+                if (pass > 0) g.setTimestamp(0L);
+                Frame f;
+                while ((f = g.grab()) != null) {
+                    if (f.samples != null) {
+                        // копия сэмплов как в стадии аудио и конвертация в PCM: линия не запущена,
+                        // предбуфер ограничен несколькими секундами
+                        if (audio != null && chunk.fill(f.samples, CHANNELS)) audio.prebufferSamples(chunk.data, chunk.len);
+                        continue;
+                    }
+                    if (f.image == null || f.image.length == 0) continue;
+                    ByteBuffer bb = (ByteBuffer) f.image[0];
+                    if (bb == null || f.imageWidth != w || f.imageHeight != h) continue;
+
+                    if (directRgba) {
+                        out.put(0, bb, 0, Math.min(w * h * 4, bb.limit()));
+                    } else {
+                        kernel.bgr24ToAbgr(bb, f.imageStride, w, h, out);
+                    }
+                    frames++;
+                }
+            }
+        } finally {
+            if (audio != null) audio.close();
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,175 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Кольцо кадров single-producer / single-consumer между декодером и render thread.
+ * Буферы вне heap (RGBA, native order, как у NativeImage) выделяются при создании или берутся
+ * у прежнего кольца, если кадр в них помещается; метки времени лежат в параллельном long[].
+ * Продюсер (декодер) берёт слот через {@link #claim()} и публикует его через {@link #publish},
+ * консьюмер (render thread) читает голову и освобождает её через {@link #advance()}.
+ * Ни одна из операций не аллоцирует.
+ */
+final class FrameRing {
+
+    private final int capacity;
+    private final int pixels;
+    private final int frameBytes;
+    // slots — выделенная память (может быть больше кадра), buffers — окна ровно на frameBytes
+    private final ByteBuffer[] slots;
+    private final ByteBuffer[] buffers;
+    private final long[] timestamps;
+
+    // head двигает только консьюмер, tail — только продюсер
+    private final Sequence head = new Sequence();
+    private final Sequence tail = new Sequence();
+
+    // локальная копия head у продюсера, чтобы не читать volatile на каждом кадре
+    private long producerHeadCache;
+
+    FrameRing(int capacity, int pixels) {
+        this(capacity, pixels, null);
+    }
+
+    /**
+     * donor — кольцо, которое больше не читается консьюмером: его слоты переиспользуются,
+     * если кадр в них помещается, новые выделяются только на рост. Окна всегда новые, поэтому
+     * буфер, взятый декодером у donor до замены, {@link #publish} этого кольца не примет.
+     */
+    FrameRing(int capacity, int pixels, FrameRing donor) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity=" + capacity);
+        this.capacity = capacity;
+        this.pixels = pixels;
+        this.frameBytes = pixels * 4;
+        this.slots = new ByteBuffer[capacity];
+        this.buffers = new ByteBuffer[capacity];
+        this.timestamps = new long[capacity];
+        // allocateDirect, а не memAlloc: декодер может ещё держать слот старого кольца,
+        // поэтому память освобождает GC, когда на буфер никто не ссылается
+        for (int i = 0; i < capacity; i++) {
+            ByteBuffer slot = (donor != null && i < donor.slots.length) ? donor.slots[i] : null;
+            if (slot == null || slot.capacity() < frameBytes) {
+                slot = ByteBuffer.allocateDirect(frameBytes).order(ByteOrder.nativeOrder());
+            }
+            slots[i] = slot;
+            buffers[i] = slot.slice(0, frameBytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    int capacity() { return capacity; }
+
+    int pixels() { return pixels; }
+
+    int frameBytes() { return frameBytes; }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    // ===== продюсер (поток декодера) =====
+
+    /** Свободный слот для записи следующего кадра или null, если кольцо заполнено. */
+    ByteBuffer claim() {
+        long t = tail.getPlain();
+        if (t - producerHeadCache >= capacity) {
+            producerHeadCache = head.getAcquire();
+            if (t - producerHeadCache >= capacity) return null;
+        }
+        return buffers[index(t)];
+    }
+
+    /** true если продюсер может записать ещё один кадр. */
+    boolean hasSpace() {
+        long t = tail.getPlain();
+        if (t - producerHeadCache < capacity) return true;
+        producerHeadCache = head.getAcquire();
+        return t - producerHeadCache < capacity;
+    }
+
+    /** Публикует ранее полученный через claim() буфер. false — буфер не из этого кольца или места нет. */
+    boolean publish(ByteBuffer buf, long timestampUs) {
+        long t = tail.getPlain();
+        int i = index(t);
+        if (buffers[i] != buf) return false;
+        if (t - producerHeadCache >= capacity) {
+            producerHeadCache = head.getAcquire();
+            if (t - producerHeadCache >= capacity) return false;
+        }
+        timestamps[i] = timestampUs;
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    // ===== консьюмер (render thread) =====
+
+    int size() {
+        long h = head.getPlain();
+        return (int) (tail.getAcquire() - h);
+    }
+
+    boolean isEmpty() {
+        return size() <= 0;
+    }
+
+    /** Метка времени кадра на позиции head + offset (offset < size()). */
+    long peekTimestamp(int offset) {
+        return timestamps[index(head.getPlain() + offset)];
+    }
+
+    ByteBuffer peekBuffer() {
+        return buffers[index(head.getPlain())];
+    }
+
+    /** Освобождает слот head для продюсера. */
+    void advance() {
+        long h = head.getPlain();
+        if (tail.getAcquire() - h <= 0) return;
+        head.setRelease(h + 1);
+    }
+
+    /** Отбрасывает все опубликованные кадры. */
+    void clear() {
+        head.setRelease(tail.getAcquire());
+    }
+
+    // ===== счётчики с отступами от false sharing =====
+
+    @SuppressWarnings("unused")
+    private static class LhsPadding {
+        long p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    private static class SequenceValue extends LhsPadding {
+        volatile long value;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Sequence extends SequenceValue {
+        long p11, p12, p13, p14, p15, p16, p17;
+
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        long getPlain() {
+            return (long) VALUE.get(this);
+        }
+
+        long getAcquire() {
+            return (long) VALUE.getAcquire(this);
+        }
+
+        void setRelease(long v) {
+            VALUE.setRelease(this, v);
+        }
+    }
+}
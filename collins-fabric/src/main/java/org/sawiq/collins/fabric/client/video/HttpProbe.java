@@ -0,0 +1,280 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Один HTTP-запрос вместо resolve + probe: GET с Range bytes=0-1, редиректы проходит сам клиент,
+ * из ответа берутся итоговый url, content-type, поддержка Range, полный размер и Content-Disposition.
+ * Общий {@link HttpClient}: HTTP/2, keep-alive пул, виртуальные потоки — тем же клиентом качает
+ * {@link SegmentedDownloader} и одним потоком VideoPlayer, так что TLS-соединение после probe переиспользуется.
+ * Удачные результаты кэшируются на RESULT_TTL_MS.
+ */
+final class HttpProbe {
+
+    private static final boolean DEBUG = false;
+
+    static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64)";
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(8);
+    private static final long RESULT_TTL_MS = 5L * 60L * 1000L;
+
+    /** Ответ probe. totalLength — полный размер (Content-Range / Content-Length), -1 если неизвестен. */
+    record Result(String finalUrl, String contentType, boolean supportsRange, String contentDisposition,
+                  int httpCode, long totalLength, long atMs) {
+    }
+
+    private static final ConcurrentHashMap<String, Result> RESULTS = new ConcurrentHashMap<>();
+    // запросы в полёте: предзагрузка и плеер по одному url ждут один ответ
+    private static final ConcurrentHashMap<String, CompletableFuture<Result>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private static final HttpClient CLIENT;
+
+    private static final long WATCHDOG_TICK_MS = 1_000L;
+    // один поток на все загрузки: раз в тик проверяет время последнего чтения тел ответов
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Collins-Download-Watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        CookieHandler cookies = CookieHandler.getDefault();
+        if (cookies == null) {
+            cookies = new CookieManager();
+            try {
+                CookieHandler.setDefault(cookies);
+            } catch (Throwable ignored) {
+            }
+        }
+        CLIENT = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                // как и раньше с HttpURLConnection: любые редиректы, включая https -> http
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .cookieHandler(cookies)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    private HttpProbe() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    static HttpClient client() {
+        return CLIENT;
+    }
+
+    static ScheduledFuture<?> watch(Runnable check) {
+        return WATCHDOG.scheduleWithFixedDelay(check, WATCHDOG_TICK_MS, WATCHDOG_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Тело ответа с таймаутом простоя — как setReadTimeout у HttpURLConnection (у HttpClient его нет):
+     * idleMs без единого байта — поток закрывается, read бросает SocketTimeoutException (а не тихий EOF).
+     */
+    static InputStream idleTimeout(InputStream in, long idleMs) {
+        return new IdleTimeoutStream(in, idleMs);
+    }
+
+    private static final class IdleTimeoutStream extends FilterInputStream {
+        private final long idleMs;
+        private final ScheduledFuture<?> task;
+        private volatile long lastReadMs = System.currentTimeMillis();
+        private volatile boolean timedOut;
+
+        IdleTimeoutStream(InputStream in, long idleMs) {
+            super(in);
+            this.idleMs = idleMs;
+            this.task = watch(() -> {
+                if (System.currentTimeMillis() - lastReadMs <= idleMs) return;
+                timedOut = true;
+                try {
+                    this.in.close();
+                } catch (Exception ignored) {
+                }
+            });
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (IOException e) {
+                if (timedOut) throw new SocketTimeoutException("no data for " + idleMs + " ms");
+                throw e;
+            }
+            if (n < 0 && timedOut) throw new SocketTimeoutException("no data for " + idleMs + " ms");
+            lastReadMs = System.currentTimeMillis();
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            task.cancel(false);
+            super.close();
+        }
+    }
+
+    /** GET с заголовками как у остальных запросов мода; range == null — без Range. */
+    static HttpRequest.Builder request(String url, String range, Duration timeout) {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(url))
+                .GET()
+                .timeout(timeout)
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", "*/*")
+                .header("Accept-Encoding", "identity");
+        if (range != null) b.header("Range", range);
+        return b;
+    }
+
+    /** Probe из кэша или null. */
+    static Result cached(String url) {
+        Result r = RESULTS.get(url);
+        if (r == null) return null;
+        if (System.currentTimeMillis() - r.atMs() > RESULT_TTL_MS) {
+            RESULTS.remove(url, r);
+            return null;
+        }
+        return r;
+    }
+
+    static void invalidate(String url) {
+        if (url != null) RESULTS.remove(url);
+    }
+
+    /** Блокирующий probe (поток плеера). null — сеть/таймаут. */
+    static Result probe(String url) {
+        try {
+            return probeAsync(url).get(PROBE_TIMEOUT.toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            dbg("probe: failed " + e + " url=" + url);
+            return null;
+        }
+    }
+
+    /**
+     * Асинхронный probe (для предзагрузки). Сначала GET bytes=0-1; на 401/403/416 — повтор без Range
+     * (некоторые хостинги отвечают на Range ошибкой). Тело не читается: после заголовков поток закрывается.
+     */
+    static CompletableFuture<Result> probeAsync(String url) {
+        Result hit = cached(url);
+        if (hit != null) return CompletableFuture.completedFuture(hit);
+
+        CompletableFuture<Result> f = new CompletableFuture<>();
+        CompletableFuture<Result> running = IN_FLIGHT.putIfAbsent(url, f);
+        if (running != null) return running;
+        start(url).whenComplete((r, e) -> {
+            IN_FLIGHT.remove(url, f);
+            if (e != null) f.completeExceptionally(e);
+            else f.complete(r);
+        });
+        return f;
+    }
+
+    private static CompletableFuture<Result> start(String url) {
+        CompletableFuture<HttpResponse<InputStream>> first;
+        try {
+            first = send(url, true);
+        } catch (Exception e) {
+            // url, который не разбирается как URI (пробелы и т.п.)
+            return CompletableFuture.failedFuture(e);
+        }
+        return first
+                .thenCompose(r -> {
+                    int code = r.statusCode();
+                    if (code == 401 || code == 403 || code == 416) {
+                        dbg("probe: " + code + " with Range, retry without " + url);
+                        try {
+                            r.body().close();
+                        } catch (Exception ignored) {
+                        }
+                        try {
+                            return send(url, false);
+                        } catch (Exception e) {
+                            return CompletableFuture.completedFuture(r);
+                        }
+                    }
+                    return CompletableFuture.completedFuture(r);
+                })
+                .thenApply(r -> {
+                    Result res = toResult(r);
+                    if (res.httpCode() >= 200 && res.httpCode() < 400) {
+                        RESULTS.put(url, res);
+                    }
+                    return res;
+                });
+    }
+
+    private static CompletableFuture<HttpResponse<InputStream>> send(String url, boolean range) {
+        HttpRequest req = request(url, range ? "bytes=0-1" : null, PROBE_TIMEOUT).build();
+        return CLIENT.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private static Result toResult(HttpResponse<InputStream> r) {
+        int code = r.statusCode();
+        String finalUrl = r.uri().toString();
+        var h = r.headers();
+        String ct = h.firstValue("Content-Type").orElse(null);
+
+        // тело не нужно: 206 на 2 байта дочитываем (соединение вернётся в пул), 200 с целым файлом — обрываем
+        try (InputStream in = r.body()) {
+            if (code == 206) in.readNBytes(16);
+        } catch (Exception ignored) {
+        }
+
+        if (code < 200 || code >= 400) {
+            dbg("probe: http error code=" + code + " url=" + finalUrl + " ct=" + ct);
+            return new Result(finalUrl, ct, false, null, code, -1L, System.currentTimeMillis());
+        }
+
+        String ar = h.firstValue("Accept-Ranges").orElse(null);
+        boolean supportsRange = code == 206 || (ar != null && ar.toLowerCase(Locale.ROOT).contains("bytes"));
+        String cd = h.firstValue("Content-Disposition").orElse(null);
+        long len = h.firstValueAsLong("Content-Length").orElse(-1L);
+        long total = code == 206 ? parseContentRangeTotal(h.firstValue("Content-Range").orElse(null)) : len;
+
+        dbg("probe: finalUrl=" + finalUrl + " code=" + code + " ct=" + ct + " ar=" + ar + " total=" + total + " cd=" + cd
+                + " version=" + r.version());
+        return new Result(finalUrl, ct, supportsRange, cd, code, total, System.currentTimeMillis());
+    }
+
+    // "bytes 0-1/12345" -> 12345; "*" или мусор -> -1
+    static long parseContentRangeTotal(String cr) {
+        if (cr == null) return -1L;
+        int slash = cr.lastIndexOf('/');
+        if (slash < 0 || slash == cr.length() - 1) return -1L;
+        try {
+            return Long.parseLong(cr.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Постоянный индекс метаданных и файлов кэша ({@code media-index.bin} в папке кэша).
+ * Ключ — sha256 url (как имя файла в кэше). Хранит resolved url, подсказку контейнера, размеры,
+ * fps, длительность, имя/размер файла кэша, время последнего доступа и контрольную сумму начала файла.
+ * Формат — журнал только на дозапись: [len][payload][crc32], битый хвост при загрузке обрезается
+ * (иначе новые записи легли бы за ним и не читались бы);
+ * когда мусора в журнале становится много, он переписывается целиком.
+ * Загружается лениво при первом обращении; без журнала (первый запуск) один раз индексирует папку.
+ * Все методы синхронизированы, обращения редкие (старт видео, скачивание).
+ */
+final class MediaIndex {
+
+    private static final boolean DEBUG = false;
+
+    static final String FILE_NAME = "media-index.bin";
+
+    private static final int MAGIC = 0x434D4958; // "CMIX"
+    private static final int VERSION = 1;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    // контрольная сумма считается по началу файла: дёшево, а битый/другой файл почти всегда отличается там
+    private static final int CHECKSUM_BYTES = 64 * 1024;
+    private static final int COMPACT_MIN_RECORDS = 256;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    /**
+     * Запись индекса. metaAtMs == 0 — метаданных нет; cacheFile пустой — файла в кэше нет;
+     * checksum == 0 — файл ещё не проверялся.
+     */
+    record Entry(String key, String resolvedUrl, boolean forceMp4Demuxer, int videoW, int videoH, double fps,
+                 long durationMs, long metaAtMs, String cacheFile, long fileSize, long checksum, long lastAccessMs) {
+
+        static Entry empty(String key) {
+            return new Entry(key, "", false, 0, 0, 0.0, 0L, 0L, "", 0L, 0L, 0L);
+        }
+
+        boolean hasMeta() {
+            return metaAtMs > 0 && videoW > 0 && videoH > 0;
+        }
+
+        boolean hasFile() {
+            return !cacheFile.isEmpty();
+        }
+
+        Entry withMeta(String resolvedUrl, boolean forceMp4Demuxer, int videoW, int videoH, double fps, long durationMs, long nowMs) {
+            return new Entry(key, resolvedUrl == null ? "" : resolvedUrl, forceMp4Demuxer, videoW, videoH, fps,
+                    durationMs, nowMs, cacheFile, fileSize, checksum, nowMs);
+        }
+
+        Entry withoutMeta() {
+            return new Entry(key, "", false, 0, 0, 0.0, 0L, 0L, cacheFile, fileSize, checksum, lastAccessMs);
+        }
+
+        Entry withFile(String cacheFile, long fileSize, long checksum, long nowMs) {
+            return new Entry(key, resolvedUrl, forceMp4Demuxer, videoW, videoH, fps, durationMs, metaAtMs,
+                    cacheFile == null ? "" : cacheFile, fileSize, checksum, nowMs);
+        }
+
+        Entry withAccess(long nowMs) {
+            return new Entry(key, resolvedUrl, forceMp4Demuxer, videoW, videoH, fps, durationMs, metaAtMs,
+                    cacheFile, fileSize, checksum, nowMs);
+        }
+    }
+
+    private static Map<String, Entry> entries;
+    private static Path dir;
+    private static int records = 0;
+
+    private MediaIndex() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /** Другая папка кэша: журнал перечитается при следующем обращении (для тестов). */
+    static synchronized void useDir(Path cacheDir) {
+        dir = cacheDir;
+        entries = null;
+        records = 0;
+    }
+
+    static synchronized Entry get(String key) {
+        return load().get(key);
+    }
+
+    /** Копия всех записей (для обхода без удержания блокировки). */
+    static synchronized Map<String, Entry> snapshot() {
+        return new HashMap<>(load());
+    }
+
+    static synchronized void putMeta(String key, String resolvedUrl, boolean forceMp4Demuxer,
+                                     int videoW, int videoH, double fps, long durationMs) {
+        Entry e = current(key).withMeta(resolvedUrl, forceMp4Demuxer, videoW, videoH, fps, durationMs, System.currentTimeMillis());
+        put(e);
+    }
+
+    /** Метаданные устарели (url протух, файл не открылся) — в следующий раз заново resolve/probe. */
+    static synchronized void forgetMeta(String key) {
+        Entry e = load().get(key);
+        if (e == null || e.metaAtMs() == 0) return;
+        put(e.withoutMeta());
+    }
+
+    /** Новый файл в кэше (ещё не проверенный). */
+    static synchronized void putFile(String key, Path file) {
+        long size = 0;
+        try {
+            size = Files.size(file);
+        } catch (Exception ignored) {
+        }
+        put(current(key).withFile(file.getFileName().toString(), size, 0L, System.currentTimeMillis()));
+    }
+
+    /** Файл прошёл полную проверку — запоминаем размер и контрольную сумму. */
+    static synchronized void markValidated(String key, Path file) {
+        try {
+            long size = Files.size(file);
+            long sum = checksum(file);
+            if (sum == 0) return;
+            put(current(key).withFile(file.getFileName().toString(), size, sum, System.currentTimeMillis()));
+        } catch (Exception e) {
+            dbg("index: validate failed " + e);
+        }
+    }
+
+    /** true — файл тот же, что был проверен: размер и контрольная сумма начала совпадают. */
+    static boolean isValidated(String key, Path file) {
+        Entry e = get(key);
+        if (e == null || e.checksum() == 0 || !e.hasFile()) return false;
+        if (!e.cacheFile().equals(file.getFileName().toString())) return false;
+        try {
+            return Files.size(file) == e.fileSize() && checksum(file) == e.checksum();
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /** Файл кэша по индексу (без обхода папки); null — нет или пропал с диска. */
+    static synchronized Path cachedFile(Path cacheDir, String key) {
+        Entry e = load().get(key);
+        if (e == null || !e.hasFile()) return null;
+        Path p = cacheDir.resolve(e.cacheFile());
+        if (Files.isRegularFile(p)) return p;
+        put(e.withFile("", 0L, 0L, e.lastAccessMs()));
+        return null;
+    }
+
+    static synchronized void touch(String key) {
+        Entry e = load().get(key);
+        if (e != null) put(e.withAccess(System.currentTimeMillis()));
+    }
+
+    /** Файл удалён из кэша (метаданные остаются: http-url ещё может пригодиться). */
+    static synchronized void removeFile(Path file) {
+        if (file == null) return;
+        String name = file.getFileName().toString();
+        Entry e = load().get(keyOf(name));
+        if (e == null || !e.cacheFile().equals(name)) return;
+        put(e.withFile("", 0L, 0L, e.lastAccessMs()));
+    }
+
+    static synchronized void remove(String key) {
+        if (load().remove(key) == null) return;
+        append(key, null);
+    }
+
+    /** Весь кэш очищен: индекс тоже. */
+    static synchronized void clear() {
+        load().clear();
+        records = 0;
+        try {
+            Files.deleteIfExists(indexFile());
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** Имя файла кэша -> ключ (hash до первой точки). */
+    static String keyOf(String fileName) {
+        int dot = fileName.indexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    static long checksum(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[CHECKSUM_BYTES];
+            int n = in.readNBytes(buf, 0, buf.length);
+            CRC32 crc = new CRC32();
+            crc.update(buf, 0, n);
+            long v = crc.getValue();
+            return v == 0 ? 1 : v;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static Entry current(String key) {
+        Entry e = load().get(key);
+        return e != null ? e : Entry.empty(key);
+    }
+
+    private static void put(Entry e) {
+        load().put(e.key(), e);
+        append(e.key(), e);
+    }
+
+    private static Path indexFile() {
+        if (dir == null) dir = VideoPlayer.getCacheDir();
+        return dir.resolve(FILE_NAME);
+    }
+
+    private static Map<String, Entry> load() {
+        if (entries != null) return entries;
+        entries = new HashMap<>();
+        records = 0;
+
+        Path f = indexFile();
+        if (!Files.isRegularFile(f) || sizeOf(f) < HEADER_BYTES) {
+            bootstrap();
+            return entries;
+        }
+
+        long goodEnd = HEADER_BYTES; // конец последней целой записи
+        try (DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(Files.newInputStream(f)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                dbg("index: bad header, rebuilding");
+                entries.clear();
+                bootstrap();
+                return entries;
+            }
+            while (true) {
+                int len;
+                try {
+                    len = in.readInt();
+                } catch (EOFException eof) {
+                    break;
+                }
+                if (len <= 0 || len > MAX_RECORD_BYTES) break;
+                byte[] payload = new byte[len];
+                in.readFully(payload);
+                int crc = in.readInt();
+                CRC32 c = new CRC32();
+                c.update(payload);
+                if ((int) c.getValue() != crc) break;
+                readRecord(payload);
+                records++;
+                goodEnd += 4L + len + 4L;
+            }
+        } catch (Exception e) {
+            // недописанная последняя запись — всё, что до неё, уже прочитано
+            dbg("index: truncated tail " + e);
+        }
+        truncateTail(f, goodEnd);
+        dbg("index: loaded entries=" + entries.size() + " records=" + records);
+        return entries;
+    }
+
+    private static long sizeOf(Path f) {
+        try {
+            return Files.size(f);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /** Срезать битый/недописанный хвост, чтобы следующие дозаписи шли сразу за целыми записями. */
+    private static void truncateTail(Path f, long goodEnd) {
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.WRITE)) {
+            if (ch.size() <= goodEnd) return;
+            dbg("index: dropping bad tail " + (ch.size() - goodEnd) + " bytes");
+            ch.truncate(goodEnd);
+        } catch (Exception e) {
+            // не вышло обрезать — переписываем журнал из прочитанного
+            dbg("index: truncate failed " + e);
+            compact();
+        }
+    }
+
+    /** Индекса ещё нет: заносим уже лежащие в кэше файлы (непроверенными) и пишем журнал с нуля. */
+    private static void bootstrap() {
+        Path d = indexFile().getParent();
+        try {
+            if (Files.isDirectory(d)) {
+                try (var s = Files.list(d)) {
+                    s.forEach(p -> {
+                        try {
+                            String n = p.getFileName().toString();
+                            if (!Files.isRegularFile(p) || !isCacheFileName(n)) return;
+                            String key = keyOf(n);
+                            entries.put(key, Entry.empty(key).withFile(n, Files.size(p), 0L,
+                                    Files.getLastModifiedTime(p).toMillis()));
+                        } catch (Exception ignored) {
+                        }
+                    });
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        compact();
+    }
+
+    /** Готовый файл кэша (не временный и не сам индекс). */
+    static boolean isCacheFileName(String n) {
+        if (n.startsWith(FILE_NAME)) return false;
+        if (n.endsWith(".part") || ProgressiveCache.isTempFile(n)) return false;
+        return n.indexOf('.') > 0;
+    }
+
+    private static void readRecord(byte[] payload) throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String key = in.readUTF();
+        if (op == OP_REMOVE) {
+            entries.remove(key);
+            return;
+        }
+        if (op != OP_PUT) return;
+        Entry e = new Entry(key, in.readUTF(), in.readBoolean(), in.readInt(), in.readInt(), in.readDouble(),
+                in.readLong(), in.readLong(), in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+        entries.put(key, e);
+    }
+
+    private static byte[] encode(String key, Entry e) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bos);
+        if (e == null) {
+            out.writeByte(OP_REMOVE);
+            out.writeUTF(key);
+        } else {
+            out.writeByte(OP_PUT);
+            out.writeUTF(key);
+            out.writeUTF(e.resolvedUrl());
+            out.writeBoolean(e.forceMp4Demuxer());
+            out.writeInt(e.videoW());
+            out.writeInt(e.videoH());
+            out.writeDouble(e.fps());
+            out.writeLong(e.durationMs());
+            out.writeLong(e.metaAtMs());
+            out.writeUTF(e.cacheFile());
+            out.writeLong(e.fileSize());
+            out.writeLong(e.checksum());
+            out.writeLong(e.lastAccessMs());
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws Exception {
+        CRC32 c = new CRC32();
+        c.update(payload);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) c.getValue());
+    }
+
+    private static void append(String key, Entry e) {
+        if (records >= COMPACT_MIN_RECORDS && records > entries.size() * 4) {
+            compact();
+            return;
+        }
+        Path f = indexFile();
+        try {
+            Files.createDirectories(f.getParent());
+            boolean fresh = !Files.isRegularFile(f);
+            try (OutputStream os = Files.newOutputStream(f, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                 DataOutputStream out = new DataOutputStream(os)) {
+                if (fresh) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                }
+                writeRecord(out, encode(key, e));
+            }
+            records++;
+        } catch (Exception ex) {
+            dbg("index: append failed " + ex);
+        }
+    }
+
+    /** Переписать журнал: по одной записи на ключ. */
+    private static void compact() {
+        Path f = indexFile();
+        Path tmp = f.resolveSibling(FILE_NAME + ".tmp");
+        try {
+            Files.createDirectories(f.getParent());
+            try (DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (Entry e : entries.values()) {
+                    writeRecord(out, encode(e.key(), e));
+                }
+            }
+            Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING);
+            records = entries.size();
+            dbg("index: compacted entries=" + records);
+        } catch (Exception ex) {
+            dbg("index: compact failed " + ex);
+        }
+    }
+}
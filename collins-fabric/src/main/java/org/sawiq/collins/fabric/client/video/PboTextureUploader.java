@@ -0,0 +1,139 @@
+package org.sawiq.collins.fabric.client.video;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Заливка кадров в текстуру через persistent-mapped PBO.
+ * Один буфер на N слотов: кадр копируется в слот, glTexSubImage2D читает из PBO
+ * (драйвер переносит данные асинхронно), на каждый слот ставится fence —
+ * слот переиспользуется только когда GPU его дочитал.
+ * Только render thread. Нужен GL 4.4 или ARB_buffer_storage, иначе {@link #isSupported()} = false.
+ */
+final class PboTextureUploader implements AutoCloseable {
+
+    private static final boolean DEBUG = false;
+
+    private static Boolean supported;
+
+    private final int width;
+    private final int height;
+    private final int frameBytes;
+    private final int slots;
+
+    private int buffer;
+    private long mappedAddr;
+    private final long[] fences;
+    private int next = 0;
+
+    static boolean isSupported() {
+        Boolean s = supported;
+        if (s == null) {
+            try {
+                GLCapabilities caps = GL.getCapabilities();
+                s = caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+            } catch (Throwable t) {
+                s = false;
+            }
+            supported = s;
+            if (DEBUG) System.out.println("[Collins] PBO upload supported=" + s);
+        }
+        return s;
+    }
+
+    PboTextureUploader(int width, int height, int slots) {
+        this.width = width;
+        this.height = height;
+        this.frameBytes = width * height * 4;
+        this.slots = slots;
+        this.fences = new long[slots];
+
+        long size = (long) frameBytes * slots;
+        int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+
+        buffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, buffer);
+        try {
+            GL44.glBufferStorage(GL21.GL_PIXEL_UNPACK_BUFFER, size, flags);
+            ByteBuffer mapped = GL30.glMapBufferRange(GL21.GL_PIXEL_UNPACK_BUFFER, 0, size, flags);
+            if (mapped == null) throw new IllegalStateException("glMapBufferRange failed");
+            mappedAddr = MemoryUtil.memAddress(mapped);
+        } catch (RuntimeException e) {
+            GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+            GL15.glDeleteBuffers(buffer);
+            buffer = 0;
+            throw e;
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+
+        if (DEBUG) System.out.println("[Collins] PBO ring " + width + "x" + height + " slots=" + slots);
+    }
+
+    int width() { return width; }
+
+    int height() { return height; }
+
+    /**
+     * Копирует кадр (RGBA, width*height*4 байт) в свободный слот и запускает заливку в текстуру glTexId.
+     * false — слот ещё читается GPU или PBO закрыт; тогда кадр надо залить обычным путём.
+     */
+    boolean upload(int glTexId, long srcAddr) {
+        if (buffer == 0 || glTexId <= 0) return false;
+
+        int i = next;
+        long fence = fences[i];
+        if (fence != 0) {
+            int status = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 0L);
+            if (status == GL32.GL_TIMEOUT_EXPIRED || status == GL32.GL_WAIT_FAILED) return false;
+            GL32.glDeleteSync(fence);
+            fences[i] = 0;
+        }
+
+        long offset = (long) frameBytes * i;
+        MemoryUtil.memCopy(srcAddr, mappedAddr + offset, frameBytes);
+
+        // привязку текстуры возвращаем как была — у игры свой кэш состояния GL
+        int prevTex = GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D);
+
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, buffer);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, glTexId);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ROW_LENGTH, 0);
+        GL11.glPixelStorei(GL11.GL_UNPACK_SKIP_ROWS, 0);
+        GL11.glPixelStorei(GL11.GL_UNPACK_SKIP_PIXELS, 0);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+        GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, offset);
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, prevTex);
+
+        fences[i] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        next = (i + 1) % slots;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < fences.length; i++) {
+            if (fences[i] != 0) {
+                GL32.glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        if (buffer != 0) {
+            GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, buffer);
+            GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+            GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+            GL15.glDeleteBuffers(buffer);
+            buffer = 0;
+            mappedAddr = 0;
+        }
+    }
+}
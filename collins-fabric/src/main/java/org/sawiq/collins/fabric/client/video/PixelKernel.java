@@ -0,0 +1,18 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Конвертация кадра BGR24 (как отдаёт swscale) в ABGR int / RGBA в памяти (как ждёт NativeImage).
+ * Экземпляр держит свои временные массивы, поэтому один kernel — на один поток декодера.
+ */
+interface PixelKernel {
+
+    /**
+     * @param src       кадр BGR24, строки с шагом srcStride байт (srcStride <= 0 — без padding)
+     * @param dst       w*h*4 байт, native order; пишется с индекса 0, position/limit не меняются
+     */
+    void bgr24ToAbgr(ByteBuffer src, int srcStride, int w, int h, ByteBuffer dst);
+
+    String name();
+}
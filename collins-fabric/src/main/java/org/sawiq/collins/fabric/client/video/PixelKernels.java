@@ -0,0 +1,41 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Выбор реализации {@link PixelKernel} и общие помощники.
+ * Сейчас реализация одна — скалярный цикл: SIMD-вариант на jdk.incubator.vector требовал
+ * --add-modules в JVM (лаунчеры его не передают) и работал только на пути BGR (directRgbaDecode=false).
+ */
+final class PixelKernels {
+
+    private PixelKernels() {}
+
+    /** Новый kernel для одного потока декодера. */
+    static PixelKernel create() {
+        return new ScalarPixelKernel();
+    }
+
+    /**
+     * Копирует строки кадра в плотный массив (без padding).
+     * Если шаг совпадает с w*3 — одним куском.
+     */
+    static byte[] packRows(ByteBuffer src, int srcStride, int w, int h, byte[] dst) {
+        int rowBytes = w * 3;
+        if (srcStride <= 0 || srcStride == rowBytes) {
+            int len = Math.min(rowBytes * h, src.limit());
+            src.get(0, dst, 0, len);
+            if (len < rowBytes * h) Arrays.fill(dst, len, rowBytes * h, (byte) 0);
+        } else {
+            int limit = src.limit();
+            for (int y = 0; y < h; y++) {
+                int srcOff = y * srcStride;
+                int len = Math.max(0, Math.min(rowBytes, limit - srcOff));
+                if (len > 0) src.get(srcOff, dst, y * rowBytes, len);
+                if (len < rowBytes) Arrays.fill(dst, y * rowBytes + len, (y + 1) * rowBytes, (byte) 0);
+            }
+        }
+        return dst;
+    }
+}
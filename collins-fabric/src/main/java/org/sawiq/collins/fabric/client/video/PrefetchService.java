@@ -0,0 +1,103 @@
+package org.sawiq.collins.fabric.client.video;
+
+import org.sawiq.collins.fabric.client.config.CollinsClientConfig;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Предзагрузка медиа экранов по синку: пока игрок идёт к экрану, url уже разрешён и проверен,
+ * метаданные лежат в кэше, а у файлов, которые играются только с диска, скачано начало
+ * (см. {@link VideoPlayer#prefetch}). Один фоновый поток с низким приоритетом, ближние экраны первыми.
+ * Трафик ограничен бюджетом prefetchBudgetMb на окно BUDGET_WINDOW_MS, смена мира отменяет очередь.
+ */
+final class PrefetchService {
+
+    private static final boolean DEBUG = false;
+
+    // начало файла: с запасом больше, чем плеер ждёт перед открытием FFmpeg
+    private static final long PREFIX_BYTES = 8L * 1024L * 1024L;
+    private static final long BUDGET_WINDOW_MS = 10L * 60L * 1000L;
+    // тот же url повторно — не раньше (синк приходит на каждое изменение экрана)
+    private static final long RESUBMIT_MS = 5L * 60L * 1000L;
+    private static final int MAX_PENDING = 32;
+
+    private static final Map<String, Long> SUBMITTED = new ConcurrentHashMap<>();
+    private static final AtomicInteger PENDING = new AtomicInteger(0);
+    private static final AtomicInteger GENERATION = new AtomicInteger(0);
+
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Collins-Prefetch");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    // только поток предзагрузки
+    private static long windowStartMs = 0L;
+    private static long windowBytes = 0L;
+
+    private PrefetchService() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /** url экранов текущего мира, от ближнего к дальнему. */
+    static void submit(List<String> urls) {
+        if (!CollinsClientConfig.get().prefetchMedia) return;
+
+        long now = System.currentTimeMillis();
+        int gen = GENERATION.get();
+        for (String url : urls) {
+            Long last = SUBMITTED.get(url);
+            if (last != null && now - last < RESUBMIT_MS) continue;
+            if (PENDING.get() >= MAX_PENDING) break;
+
+            SUBMITTED.put(url, now);
+            PENDING.incrementAndGet();
+            WORKER.execute(() -> {
+                try {
+                    run(url, gen);
+                } finally {
+                    PENDING.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    /** Смена мира/отключение: очередь отменяется, текущая загрузка останавливается. */
+    static void cancelAll() {
+        GENERATION.incrementAndGet();
+        SUBMITTED.clear();
+    }
+
+    private static void run(String url, int gen) {
+        BooleanSupplier cancelled = () -> GENERATION.get() != gen;
+        if (cancelled.getAsBoolean()) return;
+
+        long now = System.currentTimeMillis();
+        if (now - windowStartMs > BUDGET_WINDOW_MS) {
+            windowStartMs = now;
+            windowBytes = 0L;
+        }
+        long budget = CollinsClientConfig.get().prefetchBudgetMb * 1024L * 1024L;
+        // бюджет кончился — только probe и метаданные, без скачивания
+        long prefix = Math.max(0L, Math.min(PREFIX_BYTES, budget - windowBytes));
+
+        long startNs = System.nanoTime();
+        try {
+            long got = VideoPlayer.prefetch(url, prefix, cancelled);
+            windowBytes += got;
+            dbg("prefetch: " + url + " bytes=" + got + " window=" + windowBytes
+                    + " ms=" + (System.nanoTime() - startNs) / 1_000_000L);
+        } catch (Throwable t) {
+            dbg("prefetch: failed " + url + " " + t);
+        }
+    }
+}
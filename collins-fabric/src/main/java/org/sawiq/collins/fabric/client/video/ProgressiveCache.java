@@ -0,0 +1,493 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Кэш с воспроизведением во время скачивания.
+ * Файл {@code <hash>.prog} выделяется целиком и качается блоками по Range в несколько потоков;
+ * скачанные блоки отмечаются в битовой карте (на диске — {@code <hash>.prog.map}, для докачки).
+ * FFmpeg читает через {@link #openStream()}: чтение идёт с диска и блокируется только на
+ * отсутствующем блоке, а воркеры в первую очередь берут блоки от позиции последнего чтения —
+ * так вперёд качается то, что декодеру нужно сейчас (в том числе moov в конце файла и цель перемотки).
+ * Один экземпляр на файл, общий для всех плееров (счётчик ссылок); когда файл докачан
+ * и последний плеер его отпустил, {@link #release()} отдаёт путь для переноса в обычный кэш.
+ */
+final class ProgressiveCache {
+
+    private static final boolean DEBUG = false;
+
+    static final long BLOCK_BYTES = 1024L * 1024L;
+    static final String EXT = ".prog";
+    static final String MAP_EXT = ".prog.map";
+
+    private static final int MAP_MAGIC = 0x434F4C50; // "COLP"
+    // карта сбрасывается на диск каждые N скачанных блоков (и при остановке)
+    private static final int MAP_FLUSH_BLOCKS = 32;
+    private static final long WAIT_SLICE_MS = 200L;
+
+    private static final Map<String, ProgressiveCache> ACTIVE = new HashMap<>();
+
+    private final String hash;
+    private final String url;
+    private final Path file;
+    private final Path mapFile;
+    private final Path target;
+    private final long totalBytes;
+    private final int blocks;
+    private final int connections;
+
+    private final Object lock = new Object();
+    private final BitSet have;
+    private final BitSet inFlight = new BitSet();
+    private int cursor = 0;
+    private int sinceFlush = 0;
+    private boolean failed = false;
+
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+    private final AtomicLong downloaded = new AtomicLong(0);
+    private FileChannel ch;
+    private Thread[] workers;
+    private int refs = 0;
+
+    private ProgressiveCache(String hash, String url, Path dir, long totalBytes, Path target, int connections) {
+        this.hash = hash;
+        this.url = url;
+        this.file = dir.resolve(hash + EXT);
+        this.mapFile = dir.resolve(hash + MAP_EXT);
+        this.target = target;
+        this.totalBytes = totalBytes;
+        this.blocks = (int) ((totalBytes + BLOCK_BYTES - 1) / BLOCK_BYTES);
+        this.connections = Math.max(1, connections);
+        this.have = new BitSet(blocks);
+    }
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /** Временные файлы прогрессивного кэша (не считаются готовым кэшем). */
+    static boolean isTempFile(String name) {
+        return name.endsWith(EXT) || name.endsWith(MAP_EXT);
+    }
+
+    /**
+     * Взять (или начать) скачивание файла. Каждый acquire парится с {@link #release()}.
+     * target — итоговое имя в кэше, куда вызывающий перенесёт докачанный файл.
+     * @return null — файл не удалось подготовить на диске
+     */
+    static ProgressiveCache acquire(String hash, String url, Path dir, long totalBytes, Path target, int connections) {
+        synchronized (ACTIVE) {
+            ProgressiveCache pc = ACTIVE.get(hash);
+            if (pc == null || pc.totalBytes != totalBytes) {
+                if (pc != null) return null; // тот же ключ, другой файл — пусть играет кто начал
+                pc = new ProgressiveCache(hash, url, dir, totalBytes, target, connections);
+                try {
+                    pc.open();
+                } catch (Exception e) {
+                    dbg("progressive: open failed " + e);
+                    pc.closeChannel();
+                    return null;
+                }
+                ACTIVE.put(hash, pc);
+            } else {
+                // файл начала качать предзагрузка одним соединением — плееру нужно больше
+                pc.addWorkers(connections);
+            }
+            pc.refs++;
+            return pc;
+        }
+    }
+
+    /** Файл сейчас качается (кто-то держит acquire). */
+    static boolean isActive(String hash) {
+        synchronized (ACTIVE) {
+            return ACTIVE.containsKey(hash);
+        }
+    }
+
+    /**
+     * Отпустить ссылку. Последняя ссылка останавливает воркеров и сохраняет карту.
+     * @return путь к докачанному .prog (канал закрыт, карта удалена) — его надо перенести в кэш;
+     *         иначе null
+     */
+    Path release() {
+        // под ACTIVE: новый acquire того же файла дождётся, пока карта сохранится и канал закроется
+        synchronized (ACTIVE) {
+            if (--refs > 0) return null;
+            ACTIVE.remove(hash);
+            return shutdown();
+        }
+    }
+
+    private Path shutdown() {
+        stop.set(true);
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        Thread[] ws = workers;
+        if (ws != null) {
+            for (Thread t : ws) {
+                try {
+                    t.join(2000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        boolean complete = isComplete();
+        if (!complete) flushMap();
+        closeChannel();
+
+        if (complete) {
+            try {
+                Files.deleteIfExists(mapFile);
+            } catch (Exception ignored) {
+            }
+            dbg("progressive: complete " + file);
+            return file;
+        }
+        dbg("progressive: stopped at " + downloaded.get() + "/" + totalBytes + " " + file);
+        return null;
+    }
+
+    String hash() {
+        return hash;
+    }
+
+    Path target() {
+        return target;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    long totalBytes() {
+        return totalBytes;
+    }
+
+    long downloadedBytes() {
+        return downloaded.get();
+    }
+
+    boolean isComplete() {
+        synchronized (lock) {
+            return have.cardinality() == blocks;
+        }
+    }
+
+    boolean isFailed() {
+        synchronized (lock) {
+            return failed;
+        }
+    }
+
+    /**
+     * Ждёт, пока [0, bytes) скачаны (начало файла, с которого FFmpeg начинает разбор).
+     * @return false — отмена или ошибка скачивания
+     */
+    boolean awaitPrefix(long bytes, BooleanSupplier cancelled, SegmentedDownloader.Progress progress) {
+        int need = (int) ((Math.min(bytes, totalBytes) + BLOCK_BYTES - 1) / BLOCK_BYTES);
+        synchronized (lock) {
+            cursor = 0;
+            while (true) {
+                int firstMissing = have.nextClearBit(0);
+                if (firstMissing >= need) return true;
+                if (failed || stop.get()) return false;
+                if (cancelled != null && cancelled.getAsBoolean()) return false;
+                if (progress != null) progress.onProgress(downloaded.get(), totalBytes);
+                try {
+                    lock.wait(WAIT_SLICE_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    /** Поток для FFmpegFrameGrabber(InputStream, 0): mark/reset/skip без чтения (seek через skip). */
+    InputStream openStream() {
+        return new BlockStream();
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(file.getParent());
+
+        boolean resumed = Files.isRegularFile(file) && loadMap();
+        if (!resumed) {
+            have.clear();
+            Files.deleteIfExists(mapFile);
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength(totalBytes);
+            }
+        }
+        long done = 0;
+        for (int b = have.nextSetBit(0); b >= 0; b = have.nextSetBit(b + 1)) {
+            done += blockEnd(b) - blockStart(b);
+        }
+        downloaded.set(done);
+
+        ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dbg("progressive: open " + file + " total=" + totalBytes + " blocks=" + blocks + " resumed=" + resumed + " have=" + have.cardinality());
+
+        int n = Math.max(1, Math.min(connections, blocks - have.cardinality()));
+        workers = new Thread[0];
+        addWorkers(n);
+    }
+
+    /** Довести число воркеров до n (не больше недокачанных блоков). Вызывается под ACTIVE. */
+    private void addWorkers(int n) {
+        int missing;
+        synchronized (lock) {
+            if (failed) return;
+            missing = blocks - have.cardinality();
+        }
+        Thread[] ws = workers;
+        int want = Math.min(n, missing);
+        if (want <= ws.length) return;
+
+        Thread[] grown = Arrays.copyOf(ws, want);
+        for (int i = ws.length; i < want; i++) {
+            grown[i] = new Thread(this::workerLoop, "Collins-Progressive-" + i);
+            grown[i].setDaemon(true);
+            grown[i].start();
+        }
+        workers = grown;
+    }
+
+    private void workerLoop() {
+        byte[] buf = new byte[64 * 1024];
+        while (!stop.get()) {
+            int b = nextBlock();
+            if (b < 0) return;
+
+            // в общий счётчик — только целиком скачанные блоки (оборванный блок качается заново)
+            AtomicLong got = new AtomicLong(0);
+            boolean ok = SegmentedDownloader.fetchChunk(url, ch, blockStart(b), blockEnd(b) - 1, buf, got, stop);
+            if (ok) downloaded.addAndGet(got.get());
+
+            synchronized (lock) {
+                inFlight.clear(b);
+                if (ok) {
+                    have.set(b);
+                    if (++sinceFlush >= MAP_FLUSH_BLOCKS) {
+                        sinceFlush = 0;
+                        flushMapLocked();
+                    }
+                } else if (!stop.get()) {
+                    dbg("progressive: block " + b + " failed");
+                    failed = true;
+                }
+                lock.notifyAll();
+            }
+            if (!ok) return;
+        }
+    }
+
+    /** Следующий нужный блок: от курсора чтения к концу, затем с начала. -1 — брать нечего. */
+    private int nextBlock() {
+        synchronized (lock) {
+            if (failed) return -1;
+            int b = nextFree(cursor, blocks);
+            if (b < 0) b = nextFree(0, cursor);
+            if (b >= 0) inFlight.set(b);
+            return b;
+        }
+    }
+
+    private int nextFree(int from, int to) {
+        for (int b = have.nextClearBit(from); b < to; b = have.nextClearBit(b + 1)) {
+            if (!inFlight.get(b)) return b;
+        }
+        return -1;
+    }
+
+    private long blockStart(int b) {
+        return b * BLOCK_BYTES;
+    }
+
+    private long blockEnd(int b) {
+        return Math.min(totalBytes, (b + 1) * BLOCK_BYTES);
+    }
+
+    /**
+     * Блокируется, пока байт pos не скачан, и сдвигает курсор приоритета на него.
+     * @return сколько байт подряд от pos можно прочитать (не больше max)
+     */
+    private int awaitReadable(long pos, int max) throws IOException {
+        int b = (int) (pos / BLOCK_BYTES);
+        synchronized (lock) {
+            cursor = b;
+            if (!have.get(b)) {
+                long startNs = System.nanoTime();
+                while (!have.get(b)) {
+                    if (failed) throw new IOException("progressive download failed");
+                    if (stop.get()) throw new IOException("progressive cache closed");
+                    try {
+                        lock.wait(WAIT_SLICE_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("progressive read interrupted");
+                    }
+                }
+                VideoStats.PROGRESSIVE_STALL.record((System.nanoTime() - startNs) / 1000L);
+            }
+
+            long end = pos + max;
+            long avail = pos;
+            for (int i = b; i < blocks && avail < end && have.get(i); i++) {
+                avail = blockEnd(i);
+            }
+            return (int) (Math.min(end, avail) - pos);
+        }
+    }
+
+    private boolean loadMap() {
+        if (!Files.isRegularFile(mapFile)) return false;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(mapFile))) {
+            if (in.readInt() != MAP_MAGIC) return false;
+            if (in.readLong() != totalBytes) return false;
+            if (in.readLong() != BLOCK_BYTES) return false;
+            int len = in.readInt();
+            if (len < 0 || len > (blocks + 7) / 8) return false;
+            byte[] bits = new byte[len];
+            in.readFully(bits);
+            have.clear();
+            have.or(BitSet.valueOf(bits));
+            return true;
+        } catch (Exception e) {
+            dbg("progressive: map load failed " + e);
+            return false;
+        }
+    }
+
+    private void flushMap() {
+        synchronized (lock) {
+            flushMapLocked();
+        }
+    }
+
+    private void flushMapLocked() {
+        FileChannel c = ch;
+        if (c == null) return;
+        try {
+            // карта не должна обгонять данные на диске
+            c.force(false);
+            byte[] bits = have.toByteArray();
+            Path tmp = mapFile.resolveSibling(mapFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(MAP_MAGIC);
+                out.writeLong(totalBytes);
+                out.writeLong(BLOCK_BYTES);
+                out.writeInt(bits.length);
+                out.write(bits);
+            }
+            Files.move(tmp, mapFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            dbg("progressive: map flush failed " + e);
+        }
+    }
+
+    private void closeChannel() {
+        FileChannel c = ch;
+        ch = null;
+        if (c != null) {
+            try {
+                c.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /** Чтение с диска по позиции; seek FFmpeg приходит как reset() + skip(). */
+    private final class BlockStream extends InputStream {
+        private long pos = 0;
+        private long mark = 0;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int r = read(one, 0, 1);
+            return r <= 0 ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (pos >= totalBytes) return -1;
+
+            int n = awaitReadable(pos, (int) Math.min(len, totalBytes - pos));
+            FileChannel c = ch;
+            if (c == null) throw new IOException("progressive cache closed");
+
+            ByteBuffer bb = ByteBuffer.wrap(b, off, n);
+            while (bb.hasRemaining()) {
+                int r = c.read(bb, pos + (bb.position() - off));
+                if (r < 0) break;
+            }
+            int got = bb.position() - off;
+            pos += got;
+            return got;
+        }
+
+        @Override
+        public long skip(long n) {
+            long s = Math.max(0L, Math.min(n, totalBytes - pos));
+            pos += s;
+            return s;
+        }
+
+        @Override
+        public int available() {
+            if (pos >= totalBytes) return 0;
+            synchronized (lock) {
+                int b = (int) (pos / BLOCK_BYTES);
+                long avail = pos;
+                for (int i = b; i < blocks && have.get(i); i++) {
+                    avail = blockEnd(i);
+                }
+                return (int) Math.min(Integer.MAX_VALUE, avail - pos);
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mark = pos;
+        }
+
+        @Override
+        public synchronized void reset() {
+            pos = mark;
+        }
+
+        @Override
+        public void close() {
+            // ссылку на кэш держит плеер, поток закрывать нечего
+        }
+    }
+}
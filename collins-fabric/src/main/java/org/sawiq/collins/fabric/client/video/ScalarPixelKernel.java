@@ -0,0 +1,33 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.nio.ByteBuffer;
+
+/** Обычный попиксельный цикл — работает везде. */
+final class ScalarPixelKernel implements PixelKernel {
+
+    private byte[] tmpBytes = new byte[0];
+
+    @Override
+    public void bgr24ToAbgr(ByteBuffer src, int srcStride, int w, int h, ByteBuffer dst) {
+        int pixels = w * h;
+        byte[] tmp = PixelKernels.packRows(src, srcStride, w, h, ensureTmp(pixels * 3));
+
+        // BGR24 -> ABGR (0xAABBGGRR), dst в native order
+        for (int i = 0, j = 0; i < pixels; i++, j += 3) {
+            int b = tmp[j] & 0xFF;
+            int g = tmp[j + 1] & 0xFF;
+            int r = tmp[j + 2] & 0xFF;
+            dst.putInt(i << 2, 0xFF000000 | (b << 16) | (g << 8) | r);
+        }
+    }
+
+    private byte[] ensureTmp(int len) {
+        if (tmpBytes.length < len) tmpBytes = new byte[len];
+        return tmpBytes;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,110 @@
+package org.sawiq.collins.fabric.client.video;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.util.math.Vec3d;
+import org.sawiq.collins.fabric.client.state.ScreenState;
+
+/**
+ * Выбор ступени разрешения декодирования (LOD) по размеру экрана на мониторе.
+ * Высота экрана в пикселях окна считается из расстояния, fov и угла, под которым видна плоскость;
+ * берётся наименьшая ступень из {@link VideoConfig#LOD_HEIGHTS}, которая её покрывает.
+ * Гистерезис: вверх — сразу (после короткой паузы), вниз — только с запасом и не чаще DOWN_DWELL_MS,
+ * чтобы на границе ступеней декодер не переключался туда-сюда.
+ */
+final class ScreenLod {
+
+    // небольшой запас по резкости: текстура чуть больше, чем экран на мониторе
+    private static final double OVERSAMPLE = 1.25;
+    // вниз переключаемся, только если хватает и ступени ниже с этим запасом
+    private static final double DOWN_MARGIN = 0.8;
+
+    private static final long UP_DWELL_MS = 500L;
+    private static final long DOWN_DWELL_MS = 3000L;
+
+    // экран вне поля зрения: держим минимальное качество, но не ноль — повернуться можно быстро
+    private static final double OFFSCREEN_FACTOR = 0.25;
+    // плоскость почти "ребром" всё равно видна целиком по одной из осей
+    private static final double MIN_FACING = 0.35;
+
+    private ScreenLod() {}
+
+    /** Видимая высота экрана в пикселях окна (0 если игрок/окно неизвестны). */
+    static double footprintPx(MinecraftClient client, ScreenState st) {
+        if (client == null || client.player == null || st == null) return 0;
+
+        Vec3d eye = client.player.getEyePos();
+        Vec3d look = client.player.getRotationVec(1.0f);
+
+        double vfov = 70.0;
+        int winH = 720;
+        try {
+            vfov = client.options.getFov().getValue();
+            int fh = client.getWindow().getFramebufferHeight();
+            if (fh > 0) winH = fh;
+        } catch (Exception ignored) {
+        }
+
+        double cx = (st.minX() + st.maxX() + 1) * 0.5;
+        double cy = (st.minY() + st.maxY() + 1) * 0.5;
+        double cz = (st.minZ() + st.maxZ() + 1) * 0.5;
+
+        double dx = cx - eye.x;
+        double dy = cy - eye.y;
+        double dz = cz - eye.z;
+        double d = Math.max(0.5, Math.sqrt(dx * dx + dy * dy + dz * dz));
+
+        // нормаль плоскости экрана
+        double nx = 0, ny = 0, nz = 0;
+        switch (st.axis()) {
+            case 0 -> nz = 1;
+            case 1 -> ny = 1;
+            case 2 -> nx = 1;
+            default -> nz = 1;
+        }
+        double facing = Math.abs(dx * nx + dy * ny + dz * nz) / d;
+        facing = Math.max(MIN_FACING, facing);
+
+        double tanHalf = Math.tan(Math.toRadians(vfov) * 0.5);
+        double px = (st.blocksH() / d) / (2.0 * tanHalf) * winH * facing;
+
+        double cos = (dx * look.x + dy * look.y + dz * look.z) / d;
+        if (cos < 0) px *= OFFSCREEN_FACTOR;
+
+        return px;
+    }
+
+    /** Наименьшая ступень, покрывающая need пикселей (или самая высокая). */
+    private static int tierFor(double needPx) {
+        int[] tiers = VideoConfig.LOD_HEIGHTS;
+        int best = tiers[0];
+        for (int t : tiers) {
+            if (t >= needPx) best = t;
+        }
+        return best;
+    }
+
+    /**
+     * Новая ступень с гистерезисом.
+     * currentH <= 0 — ступени ещё нет (берём сразу нужную).
+     */
+    static int select(int currentH, double footprintPx, long nowMs, long lastChangeMs) {
+        double need = footprintPx * OVERSAMPLE;
+        int wanted = tierFor(need);
+        if (currentH <= 0) return wanted;
+        if (wanted == currentH) return currentH;
+
+        long since = nowMs - lastChangeMs;
+        if (wanted > currentH) {
+            return since >= UP_DWELL_MS ? wanted : currentH;
+        }
+
+        // вниз: с запасом относительно выбранной ступени и после паузы
+        if (since < DOWN_DWELL_MS) return currentH;
+        if (need > wanted * DOWN_MARGIN) {
+            // попадаем на границу — опускаемся не ниже ступени с запасом
+            int safer = tierFor(need / DOWN_MARGIN);
+            return Math.min(currentH, safer);
+        }
+        return wanted;
+    }
+}
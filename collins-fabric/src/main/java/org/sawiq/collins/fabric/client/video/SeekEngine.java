@@ -0,0 +1,43 @@
+package org.sawiq.collins.fabric.client.video;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+
+/**
+ * Перемотка при входе в уже идущий сеанс.
+ * setTimestamp в JavaCV сам прыгает на ключевой кадр до цели и догоняет её кадрами без конвертации;
+ * на время догона декодер пропускает неопорные кадры (AVDISCARD_NONREF, см. {@link VideoDiscard}) —
+ * их никто не покажет и никто на них не ссылается, так что опорные кадры цели декодируются корректно.
+ * Задержка перемотки — в {@link VideoStats#SEEK}.
+ */
+final class SeekEngine {
+
+    private static final boolean DEBUG = false;
+
+    private SeekEngine() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /** Возвращает таймстемп, на котором остановился граббер (мкс). */
+    static long seek(FFmpegFrameGrabber g, long targetUs) {
+        long startNs = System.nanoTime();
+
+        boolean discard = VideoDiscard.set(g, avcodec.AVDISCARD_NONREF);
+        try {
+            g.setTimestamp(targetUs);
+        } catch (Exception e) {
+            dbg("seek: setTimestamp failed " + e);
+        } finally {
+            if (discard) VideoDiscard.set(g, avcodec.AVDISCARD_DEFAULT);
+        }
+
+        long landed = g.getTimestamp();
+        long latencyUs = (System.nanoTime() - startNs) / 1000L;
+        VideoStats.SEEK.record(latencyUs);
+        dbg("seek: target=" + targetUs / 1000L + "ms landed=" + landed / 1000L + "ms nonref=" + discard
+                + " latency=" + latencyUs / 1000L + "ms");
+        return landed;
+    }
+}
@@ -0,0 +1,194 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Скачивание файла в несколько соединений по Range.
+ * Файл заранее выделяется целиком, воркеры берут куски по очереди и пишут их
+ * позиционно через один FileChannel. Кусок, оборвавшийся на середине, докачивается
+ * с места обрыва (до MAX_RETRIES попыток), остальные куски это не задевает.
+ * Тело, по которому READ_IDLE_MS не пришло ни байта, закрывает сторож — зависшее соединение
+ * становится обычным обрывом и уходит на повтор.
+ * Прогресс и отмена опрашиваются из вызывающего потока.
+ */
+final class SegmentedDownloader {
+
+    private static final boolean DEBUG = false;
+
+    static final long CHUNK_BYTES = 8L * 1024L * 1024L;
+    private static final int MAX_RETRIES = 4;
+    private static final long PROGRESS_INTERVAL_MS = 250L;
+    // до заголовков ответа; тело — под сторожем простоя (READ_IDLE_MS)
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final long READ_IDLE_MS = 15_000L;
+
+    interface Progress {
+        void onProgress(long downloadedBytes, long totalBytes);
+    }
+
+    private SegmentedDownloader() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    /**
+     * @return true — файл target скачан полностью (totalBytes байт);
+     *         false — отмена или кусок не скачался после всех попыток (target надо удалить).
+     */
+    static boolean download(String url, Path target, long totalBytes, int connections,
+                            BooleanSupplier cancelled, Progress progress) throws Exception {
+        if (totalBytes <= 0) return false;
+
+        try (RandomAccessFile raf = new RandomAccessFile(target.toFile(), "rw")) {
+            raf.setLength(totalBytes);
+        }
+
+        int chunks = (int) ((totalBytes + CHUNK_BYTES - 1) / CHUNK_BYTES);
+        int workers = Math.max(1, Math.min(connections, chunks));
+
+        AtomicInteger nextChunk = new AtomicInteger(0);
+        AtomicLong downloaded = new AtomicLong(0);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        AtomicBoolean stop = new AtomicBoolean(false);
+
+        dbg("segmented: " + url + " total=" + totalBytes + " chunks=" + chunks + " workers=" + workers);
+
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            Thread[] threads = new Thread[workers];
+            for (int i = 0; i < workers; i++) {
+                threads[i] = new Thread(() -> {
+                    byte[] buf = new byte[64 * 1024];
+                    while (!stop.get()) {
+                        int idx = nextChunk.getAndIncrement();
+                        if (idx >= chunks) return;
+
+                        long start = idx * CHUNK_BYTES;
+                        long end = Math.min(totalBytes, start + CHUNK_BYTES) - 1;
+                        if (!fetchChunk(url, ch, start, end, buf, downloaded, stop)) {
+                            if (!stop.get()) {
+                                dbg("segmented: chunk " + idx + " failed");
+                                failed.set(true);
+                            }
+                            stop.set(true);
+                            return;
+                        }
+                    }
+                }, "Collins-Download-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+
+            boolean alive = true;
+            while (alive) {
+                alive = false;
+                for (Thread t : threads) {
+                    t.join(PROGRESS_INTERVAL_MS);
+                    if (t.isAlive()) {
+                        alive = true;
+                        break;
+                    }
+                }
+                if (progress != null) progress.onProgress(downloaded.get(), totalBytes);
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    stop.set(true);
+                }
+            }
+
+            if (stop.get() || failed.get()) return false;
+            ch.force(false);
+        }
+
+        return downloaded.get() == totalBytes;
+    }
+
+    /** Качает [start, end] включительно; при обрыве продолжает с последнего записанного байта. */
+    static boolean fetchChunk(String url, FileChannel ch, long start, long end, byte[] buf,
+                              AtomicLong downloaded, AtomicBoolean stop) {
+        long pos = start;
+        for (int attempt = 0; attempt <= MAX_RETRIES && !stop.get(); attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(500L * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+
+            try {
+                // общий HttpClient (см. HttpProbe): соединение после probe и между кусками переиспользуется
+                HttpRequest req = HttpProbe.request(url, "bytes=" + pos + "-" + end, REQUEST_TIMEOUT).build();
+                HttpResponse<InputStream> resp = HttpProbe.client().send(req, HttpResponse.BodyHandlers.ofInputStream());
+
+                int code = resp.statusCode();
+                if (code != 206) {
+                    // 200 = сервер проигнорировал Range — качать кусками нельзя
+                    dbg("segmented: range " + pos + "-" + end + " -> " + code);
+                    closeQuietly(resp.body());
+                    if (code == 200) return false;
+                    continue;
+                }
+
+                InputStream in = resp.body();
+                AtomicLong lastReadMs = new AtomicLong(System.currentTimeMillis());
+                AtomicBoolean stalled = new AtomicBoolean(false);
+                // read() тела HttpClient таймаута не знает: зависшее соединение держало бы воркера вечно.
+                // Закрытие потока будит read (исключение или -1) — дальше обычный повтор с места обрыва;
+                // на stop закрываем сразу, чтобы остановка не ждала сторожа
+                ScheduledFuture<?> watchdog = HttpProbe.watch(() -> {
+                    boolean idle = System.currentTimeMillis() - lastReadMs.get() > READ_IDLE_MS;
+                    if (idle || stop.get()) {
+                        stalled.set(idle);
+                        closeQuietly(in);
+                    }
+                });
+                try {
+                    int r;
+                    while (pos <= end && (r = in.read(buf, 0, (int) Math.min(buf.length, end - pos + 1))) >= 0) {
+                        lastReadMs.set(System.currentTimeMillis());
+                        if (stop.get()) return false;
+                        ByteBuffer bb = ByteBuffer.wrap(buf, 0, r);
+                        while (bb.hasRemaining()) {
+                            pos += ch.write(bb, pos);
+                        }
+                        downloaded.addAndGet(r);
+                    }
+                } catch (Exception e) {
+                    if (!stalled.get()) throw e;
+                } finally {
+                    watchdog.cancel(false);
+                    closeQuietly(in);
+                }
+                if (pos > end) return true;
+                if (stalled.get()) dbg("segmented: range " + pos + "-" + end + " stalled " + READ_IDLE_MS + "ms, attempt=" + attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception e) {
+                dbg("segmented: range " + pos + "-" + end + " error " + e + " attempt=" + attempt);
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
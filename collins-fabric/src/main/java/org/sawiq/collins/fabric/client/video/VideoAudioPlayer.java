@@ -1,8 +1,6 @@
 package org.sawiq.collins.fabric.client.video;
 
 import javax.sound.sampled.*;
-import java.nio.Buffer;
-import java.nio.ShortBuffer;
 import java.util.concurrent.locks.LockSupport;
 
 public final class VideoAudioPlayer implements AutoCloseable {
@@ -62,11 +60,11 @@ public final class VideoAudioPlayer implements AutoCloseable {
         return prebufferLen > 0;
     }
 
-    public void prebufferSamples(Buffer[] samples, int channelsWanted) {
-        if (samples == null || samples.length == 0) return;
-        if (!(samples[0] instanceof ShortBuffer)) return;
+    /** samples — interleaved, по channels на сэмпл (см. DecodePipeline.AudioChunk) */
+    public void prebufferSamples(short[] samples, int len) {
+        if (samples == null || len <= 0) return;
 
-        int pcmLen = toPcm16le(samples, channelsWanted);
+        int pcmLen = toPcm16le(samples, len);
         if (pcmLen <= 0) return;
 
         if (prebufferLen + pcmLen > prebufferMaxBytes) return;
@@ -89,65 +87,22 @@ public final class VideoAudioPlayer implements AutoCloseable {
         return line.getMicrosecondPosition();
     }
 
-    public void writeSamples(Buffer[] samples, int channelsWanted) {
-        if (samples == null || samples.length == 0) return;
+    public void writeSamples(short[] samples, int len) {
+        if (samples == null || len <= 0) return;
 
-        // чаще всего JavaCV даёт ShortBuffer
-        if (samples[0] instanceof ShortBuffer) {
-            int pcmLen = toPcm16le(samples, channelsWanted);
-            if (pcmLen > 0) {
-                writePcmNonBlocking(pcmBuf, pcmLen);
-            }
+        int pcmLen = toPcm16le(samples, len);
+        if (pcmLen > 0) {
+            writePcmNonBlocking(pcmBuf, pcmLen);
         }
     }
 
-    private int toPcm16le(Buffer[] samples, int channelsWanted) {
+    private int toPcm16le(short[] src, int n) {
         float g = this.gain;
-
-        if (channelsWanted <= 1) {
-            ShortBuffer sb = ((ShortBuffer) samples[0]).duplicate();
-            int len = sb.remaining() * 2;
-            ensureCapacity(len);
-
-            int o = 0;
-            while (sb.hasRemaining()) {
-                short s = scaleClamp(sb.get(), g);
-                pcmBuf[o++] = (byte) (s & 0xFF);
-                pcmBuf[o++] = (byte) ((s >>> 8) & 0xFF);
-            }
-            return o;
-        }
-
-        // stereo: либо planar (L,R), либо interleaved
-        if (samples.length >= 2 && samples[0] instanceof ShortBuffer && samples[1] instanceof ShortBuffer) {
-            ShortBuffer l = ((ShortBuffer) samples[0]).duplicate();
-            ShortBuffer r = ((ShortBuffer) samples[1]).duplicate();
-
-            int n = Math.min(l.remaining(), r.remaining());
-            int len = n * 2 * 2;
-            ensureCapacity(len);
-
-            int o = 0;
-            for (int i = 0; i < n; i++) {
-                short sl = scaleClamp(l.get(), g);
-                pcmBuf[o++] = (byte) (sl & 0xFF);
-                pcmBuf[o++] = (byte) ((sl >>> 8) & 0xFF);
-
-                short sr = scaleClamp(r.get(), g);
-                pcmBuf[o++] = (byte) (sr & 0xFF);
-                pcmBuf[o++] = (byte) ((sr >>> 8) & 0xFF);
-            }
-            return o;
-        }
-
-        // interleaved
-        ShortBuffer sb = ((ShortBuffer) samples[0]).duplicate();
-        int len = sb.remaining() * 2;
-        ensureCapacity(len);
+        ensureCapacity(n * 2);
 
         int o = 0;
-        while (sb.hasRemaining()) {
-            short s = scaleClamp(sb.get(), g);
+        for (int i = 0; i < n; i++) {
+            short s = scaleClamp(src[i], g);
             pcmBuf[o++] = (byte) (s & 0xFF);
             pcmBuf[o++] = (byte) ((s >>> 8) & 0xFF);
         }
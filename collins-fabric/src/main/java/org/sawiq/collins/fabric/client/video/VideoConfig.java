@@ -14,5 +14,8 @@ public final class VideoConfig {
 
     public static final int TARGET_FPS = 30;
 
+    // ступени LOD по высоте кадра (от лучшей к худшей), см. ScreenLod
+    public static final int[] LOD_HEIGHTS = { 720, 480, 360, 240, 144 };
+
     public static final double PLANE_EPS = 0.012;
 }
@@ -0,0 +1,75 @@
+package org.sawiq.collins.fabric.client.video;
+
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.global.avformat;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+
+import java.lang.reflect.Field;
+
+/**
+ * Какие видеопакеты FFmpeg вообще не декодирует (AVDISCARD_*): на видеопотоке (demuxer отбрасывает пакеты,
+ * если умеет) и в skip_frame декодера (его JavaCV не отдаёт наружу — поле граббера через reflection;
+ * нет поля — остаётся только поток). Вызывать из потока, который делает grab().
+ */
+final class VideoDiscard {
+
+    private static final boolean DEBUG = false;
+
+    private static final Field VIDEO_CODEC_CONTEXT = findField("video_c");
+
+    private VideoDiscard() {}
+
+    private static void dbg(String s) {
+        if (DEBUG) System.out.println("[Collins] " + s);
+    }
+
+    private static Field findField(String name) {
+        try {
+            Field f = FFmpegFrameGrabber.class.getDeclaredField(name);
+            f.setAccessible(true);
+            return f;
+        } catch (Throwable t) {
+            dbg("discard: no grabber field " + name + ": " + t);
+            return null;
+        }
+    }
+
+    /** level — avcodec.AVDISCARD_*; false — граббер не открыт или видеопотока нет. */
+    static boolean set(FFmpegFrameGrabber g, int level) {
+        boolean any = false;
+        try {
+            AVStream st = videoStream(g);
+            if (st != null) {
+                st.discard(level);
+                any = true;
+            }
+        } catch (Throwable t) {
+            dbg("discard: stream failed " + t);
+        }
+        try {
+            if (VIDEO_CODEC_CONTEXT != null && VIDEO_CODEC_CONTEXT.get(g) instanceof AVCodecContext c && !c.isNull()) {
+                c.skip_frame(level);
+                any = true;
+            }
+        } catch (Throwable t) {
+            dbg("discard: decoder failed " + t);
+        }
+        return any;
+    }
+
+    private static AVStream videoStream(FFmpegFrameGrabber g) {
+        AVFormatContext oc = g.getFormatContext();
+        if (oc == null || oc.isNull()) return null;
+        for (int i = 0; i < oc.nb_streams(); i++) {
+            AVStream st = oc.streams(i);
+            if (st.codecpar().codec_type() == avutil.AVMEDIA_TYPE_VIDEO
+                    && (st.disposition() & avformat.AV_DISPOSITION_ATTACHED_PIC) == 0) {
+                return st;
+            }
+        }
+        return null;
+    }
+}
@@ -2,8 +2,10 @@ package org.sawiq.collins.fabric.client.video;
 
 import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.Frame;
+import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.ffmpeg.global.avutil;
 import net.fabricmc.loader.api.FabricLoader;
+import org.sawiq.collins.fabric.client.config.CollinsClientConfig;
 
 import javax.sound.sampled.LineUnavailableException;
 import java.io.ByteArrayOutputStream;
@@ -11,19 +13,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.CookieHandler;
 import java.net.CookieManager;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.time.Duration;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 import java.util.concurrent.locks.LockSupport;
 
 public final class VideoPlayer {
@@ -183,11 +186,8 @@ public final class VideoPlayer {
                         long sz = Files.size(existing);
                         if (sz > 0 && sz <= DISK_CACHE_MAX_BYTES) {
                             // Проверяем валидность кэша через FFmpeg
-                            if (isValidMediaFile(existing)) {
-                                try {
-                                    Files.setLastModifiedTime(existing, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis()));
-                                } catch (Exception ignored) {
-                                }
+                            if (isValidCachedFile(hash, existing)) {
+                                DiskCacheManager.accessed(hash);
                                 enforceDiskCacheLimit(dir, DISK_CACHE_MAX_BYTES);
                                 DISK_CACHE_LAST_FAIL_MS.remove(hash);
                                 dbg("cacheFallback: using valid existing file keyHash=" + hash);
@@ -208,6 +208,7 @@ public final class VideoPlayer {
                         Files.deleteIfExists(existing);
                     } catch (Exception ignored) {
                     }
+                    DiskCacheManager.removed(existing);
                 }
 
                 Long lastFail = DISK_CACHE_LAST_FAIL_MS.get(hash);
@@ -227,60 +228,41 @@ public final class VideoPlayer {
 
                 String cur = u0;
                 String ref = null;
-                HttpURLConnection c = null;
+                HttpResponse<InputStream> resp = null;
                 String ct = null;
 
+                // редиректы проходит общий HttpClient (см. HttpProbe); круг цикла — html-страница со ссылкой на файл
                 for (int i = 0; i < 8; i++) {
-                    URL base = new URL(cur);
-                    c = (HttpURLConnection) base.openConnection();
-                    c.setInstanceFollowRedirects(false);
-                    c.setRequestMethod("GET");
-                    c.setConnectTimeout(15_000);
-                    c.setReadTimeout(60_000); // Увеличен для больших файлов
-                    c.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64)");
-                    c.setRequestProperty("Accept", "*/*");
-                    c.setRequestProperty("Accept-Encoding", "identity");
-                    c.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-                    c.setRequestProperty("Connection", "keep-alive");
+                    HttpRequest.Builder rb = HttpProbe.request(cur, null, DOWNLOAD_HEADERS_TIMEOUT)
+                            .header("Accept-Language", "en-US,en;q=0.9");
                     if (ref != null && !ref.isBlank()) {
-                        c.setRequestProperty("Referer", ref);
+                        rb.header("Referer", ref);
                     }
+                    resp = HttpProbe.client().send(rb.build(), HttpResponse.BodyHandlers.ofInputStream());
 
-                    int code = c.getResponseCode();
-                    dbg("cacheFallback: GET " + cur + " -> " + code);
+                    int code = resp.statusCode();
+                    String at = resp.uri().toString();
+                    dbg("cacheFallback: GET " + cur + " -> " + code + (at.equals(cur) ? "" : " at " + at));
                     if (code >= 300 && code < 400) {
-                        String loc = c.getHeaderField("Location");
-                        c.disconnect();
-                        if (loc == null || loc.isBlank()) {
-                            dbg("cacheFallback: redirect without Location");
-                            DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
-                            return null;
-                        }
-                        URL next = new URL(base, loc);
-                        ref = cur;
-                        cur = next.toString();
-                        continue;
+                        // клиент идёт по любому Location — значит, его нет
+                        dbg("cacheFallback: redirect without Location");
+                        closeQuietly(resp.body());
+                        DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
+                        return null;
                     }
 
                     if (code < 200 || code >= 400) {
-                        dbg("cacheFallback: non-2xx code=" + code + " url=" + cur);
-                        c.disconnect();
+                        dbg("cacheFallback: non-2xx code=" + code + " url=" + at);
+                        closeQuietly(resp.body());
                         DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
                         return null;
                     }
 
-                    try {
-                        ct = c.getHeaderField("Content-Type");
-                    } catch (Exception ignored) {
-                        ct = null;
-                    }
+                    ct = resp.headers().firstValue("Content-Type").orElse(null);
+                    cur = at;
 
                     try {
-                        String host = "";
-                        try {
-                            host = base.getHost();
-                        } catch (Exception ignored) {
-                        }
+                        String host = resp.uri().getHost();
                         String hostLower = (host == null) ? "" : host.toLowerCase(Locale.ROOT);
                         boolean isSurl = hostLower.equals("surl.lu") || hostLower.endsWith(".surl.lu")
                                 || hostLower.equals("surl.li") || hostLower.endsWith(".surl.li");
@@ -288,17 +270,16 @@ public final class VideoPlayer {
 
                         if (isSurl || ctHtml) {
                             String html = null;
-                            try (InputStream in = c.getInputStream()) {
+                            try (InputStream in = resp.body()) {
                                 html = readLimitedUtf8(in, 256 * 1024);
                             } catch (Exception ignored) {
                             }
                             String extracted = extractLikelyMediaUrl(html);
-                            c.disconnect();
                             if (extracted != null && !extracted.isBlank() && !extracted.equalsIgnoreCase(cur)) {
                                 dbg("cacheFallback: extracted media url=" + extracted);
                                 ref = cur;
                                 cur = extracted;
-                                c = null;
+                                resp = null;
                                 ct = null;
                                 continue;
                             }
@@ -311,20 +292,16 @@ public final class VideoPlayer {
                     break;
                 }
 
-                if (c == null) {
+                if (resp == null) {
                     dbg("cacheFallback: failed to open connection");
                     DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
                     return null;
                 }
 
-                long declaredLen = -1L;
-                try {
-                    declaredLen = c.getContentLengthLong();
-                } catch (Exception ignored) {
-                }
+                long declaredLen = resp.headers().firstValueAsLong("Content-Length").orElse(-1L);
                 dbg("cacheFallback: contentType=" + ct + " contentLength=" + declaredLen + " finalUrl=" + cur);
                 if (declaredLen > DISK_CACHE_MAX_BYTES) {
-                    c.disconnect();
+                    closeQuietly(resp.body());
                     DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
                     return null;
                 }
@@ -334,7 +311,8 @@ public final class VideoPlayer {
 
                 long written = 0L;
                 long lastProgressLog = 0L;
-                try (InputStream in = c.getInputStream(); OutputStream out = Files.newOutputStream(tmp)) {
+                try (InputStream in = HttpProbe.idleTimeout(resp.body(), DOWNLOAD_READ_IDLE_MS);
+                     OutputStream out = Files.newOutputStream(tmp)) {
                     boolean ctHtml = false;
                     try {
                         if (ct != null) {
@@ -409,11 +387,6 @@ public final class VideoPlayer {
                             return null;
                         }
                     }
-                } finally {
-                    try {
-                        c.disconnect();
-                    } catch (Exception ignored) {
-                    }
                 }
 
                 dbg("cacheFallback: downloaded bytes=" + written + " -> " + dst);
@@ -446,6 +419,7 @@ public final class VideoPlayer {
                 } catch (Exception ignored) {
                 }
 
+                DiskCacheManager.added(hash, dst);
                 enforceDiskCacheLimit(dir, DISK_CACHE_MAX_BYTES);
                 DISK_CACHE_LAST_FAIL_MS.remove(hash);
                 return new CacheResult(dst, ct);
@@ -460,7 +434,8 @@ public final class VideoPlayer {
     public interface FrameSink {
         void initVideo(int videoW, int videoH, int targetW, int targetH, double fps);
 
-        void onFrame(int[] argb, int w, int h, long timestampUs);
+        /** rgba — слот из borrowBuffer(): w*h пикселей RGBA (в памяти), т.е. ABGR int в native order */
+        void onFrame(ByteBuffer rgba, int w, int h, long timestampUs);
 
         void onStop();
 
@@ -494,19 +469,43 @@ public final class VideoPlayer {
             return true;
         }
 
-        /** Получить свободный буфер из пула (или null если пул пуст) */
-        default int[] borrowBuffer() {
+        /** Получить свободный off-heap буфер из пула (или null если пул пуст) */
+        default ByteBuffer borrowBuffer() {
             return null;
         }
 
         /** Вернуть буфер в пул после использования */
-        default void returnBuffer(int[] buf) {
+        default void returnBuffer(ByteBuffer buf) {
         }
 
         /** true когда буфер видео готов (можно начинать аудио) */
         default boolean isBufferReady() {
             return true;
         }
+
+        /** true — экран давно не виден: при наличии аудио декодировать только ключевые кадры */
+        default boolean videoThrottled() {
+            return false;
+        }
+
+        /** Ограничение высоты кадра (ступень LOD); 0 — без ограничения */
+        default int maxDecodeHeight() {
+            return 0;
+        }
+
+        /** Декодер переключил размер кадра на лету; следующие кадры придут уже в новом размере */
+        default void onResize(int targetW, int targetH) {
+        }
+
+        /** Конвертировать только каждый N-й видеокадр (понижение от DecodeScheduler) */
+        default int frameDivisor() {
+            return 1;
+        }
+
+        /** Потоков декодера FFmpeg (берётся при открытии граббера); 0 — авто (FFmpeg сам, по числу ядер) */
+        default int decoderThreads() {
+            return 0;
+        }
     }
 
     private final FrameSink sink;
@@ -514,6 +513,7 @@ public final class VideoPlayer {
     private volatile boolean running;
     private volatile long sessionId; // Уникальный ID сессии для защиты от дублирования
     private Thread thread;
+    private volatile int decodePriority = Thread.MAX_PRIORITY;
 
     private volatile long startPosMs = 0;
     private volatile float gain = 1.0f;
@@ -525,9 +525,25 @@ public final class VideoPlayer {
 
     private static final ConcurrentHashMap<String, CachedMeta> META_CACHE = new ConcurrentHashMap<>();
     private static final long META_TTL_MS = 15L * 60L * 1000L;
+    // http-url из постоянного индекса (после перезапуска): дольше, чем в памяти, но не вечно
+    private static final long PERSISTED_HTTP_META_TTL_MS = 12L * 60L * 60L * 1000L;
 
     private static final long DISK_CACHE_MAX_BYTES = 4L * 1024L * 1024L * 1024L;
     private static final long DISK_CACHE_FAIL_COOLDOWN_MS = 10_000L;
+    // файлы меньше качаем одним потоком — несколько соединений не окупаются
+    private static final long SEGMENTED_MIN_BYTES = 16L * 1024L * 1024L;
+    // скачивание в кэш одним потоком (общий HttpClient): до заголовков ответа / без единого байта тела
+    private static final Duration DOWNLOAD_HEADERS_TIMEOUT = Duration.ofSeconds(15);
+    private static final long DOWNLOAD_READ_IDLE_MS = 60_000L;
+    // прогрессивный кэш: сколько начала файла ждать перед открытием FFmpeg
+    private static final long PROGRESSIVE_PRIME_BYTES = 2L * 1024L * 1024L;
+    // предзагрузка не начинает файл, если после него на диске останется меньше
+    private static final long PREFETCH_MIN_FREE_BYTES = 1024L * 1024L * 1024L;
+
+    // файл, который играется во время скачивания (только поток плеера, живёт один playOnce)
+    private ProgressiveCache progressive;
+    // ключ файла кэша, который сейчас играется: закреплён от вытеснения (только поток плеера)
+    private String pinnedKey;
 
     public boolean isRunning() {
         return running && thread != null && thread.isAlive();
@@ -660,10 +676,18 @@ public final class VideoPlayer {
         running = true;
         thread = new Thread(() -> runLoop(urlFinal, blocksW, blocksH, loop, mySessionId), "Collins-VideoPlayer");
         thread.setDaemon(true);
-        thread.setPriority(Thread.MAX_PRIORITY); // высокий приоритет для уменьшения GC пауз
+        thread.setPriority(decodePriority); // высокий приоритет для уменьшения GC пауз (если не понижен планировщиком)
         thread.start();
     }
 
+    /** Приоритет потока декодера; применяется сразу и к следующим запускам. */
+    public void setDecodePriority(int priority) {
+        int p = Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority));
+        this.decodePriority = p;
+        Thread t = thread;
+        if (t != null) t.setPriority(p);
+    }
+
     public void setGain(float gain) {
         float g = Math.max(0f, gain);
         this.gain = g;
@@ -708,7 +732,13 @@ public final class VideoPlayer {
                 long requestEpochMs = first ? startRequestEpochMs : 0L;
                 first = false;
 
-                boolean ok = playOnce(url, blocksW, blocksH, seekMs, requestEpochMs, mySessionId);
+                boolean ok;
+                try {
+                    ok = playOnce(url, blocksW, blocksH, loop, seekMs, requestEpochMs, mySessionId);
+                } finally {
+                    releaseProgressive();
+                    unpinCacheFile();
+                }
                 if (!ok) {
                     failStreak++;
                     if (!loop) break;
@@ -740,7 +770,7 @@ public final class VideoPlayer {
         }
     }
 
-    private boolean playOnce(String url, int blocksW, int blocksH, long seekMs, long requestEpochMs, long mySessionId) {
+    private boolean playOnce(String url, int blocksW, int blocksH, boolean loop, long seekMs, long requestEpochMs, long mySessionId) {
         // Проверка сессии в начале
         if (sessionId != mySessionId || !running) {
             dbg("playOnce: session mismatch or stopped, aborting");
@@ -753,6 +783,18 @@ public final class VideoPlayer {
         dbg("playOnce: originalUrl=" + originalUrl + " blocks=" + blocksW + "x" + blocksH + " seekMs=" + seekMs);
 
         boolean forceMp4Demuxer = false;
+        // размер/длительность неизвестны — похоже на трансляцию (для выбора threading декодера)
+        boolean liveHint = false;
+        final long playStartNs = System.nanoTime();
+
+        // directRgba: swscale сразу выдаёт RGBA (= раскладка NativeImage), кадр копируется
+        // в off-heap слот одним memcpy без java-массивов и попиксельного цикла.
+        // Иначе — старый путь BGR24 -> ABGR на CPU.
+        final boolean directRgba = CollinsClientConfig.get().directRgbaDecode;
+
+        // граббер, открытый ради метаданных, дальше декодирует (второй open не нужен)
+        FFmpegFrameGrabber opened = null;
+        long openUs = 0;
 
         int videoW;
         int videoH;
@@ -760,7 +802,14 @@ public final class VideoPlayer {
         long durationMs;
 
         CachedMeta cached = META_CACHE.get(originalUrl);
-        if (cached != null && (System.currentTimeMillis() - cached.cachedAtMs()) <= META_TTL_MS) {
+        if (cached != null && (System.currentTimeMillis() - cached.cachedAtMs()) > META_TTL_MS) {
+            cached = null;
+        }
+        if (cached == null) {
+            // после перезапуска клиента — из постоянного индекса, без resolve/probe/meta
+            cached = persistedMeta(originalUrl);
+        }
+        if (cached != null) {
             String cachedResolved = cached.resolvedUrl();
             if (cachedResolved != null && !cachedResolved.isBlank()) {
                 if (cachedResolved.startsWith("http://") || cachedResolved.startsWith("https://")) {
@@ -786,19 +835,16 @@ public final class VideoPlayer {
             }
         }
 
+        final boolean fromMetaCache = cached != null;
         if (cached != null) {
             forceMp4Demuxer = cached.forceMp4Demuxer();
+            liveHint = cached.durationMs() <= 0;
             videoW = cached.videoW();
             videoH = cached.videoH();
             fps = cached.fps();
             durationMs = cached.durationMs();
         } else {
-            String resolved = tryResolveUrl(url);
-            if (resolved != null) {
-                dbg("playOnce: resolved url=" + resolved);
-                url = resolved;
-            }
-
+            // один запрос: редиректы + content-type/Range/размер (раньше — отдельный resolve и probe)
             ProbeResult pr = probeUrl(url);
             if (pr == null) {
                 dbg("playOnce: probeUrl failed for " + url);
@@ -823,6 +869,7 @@ public final class VideoPlayer {
                 }
             } else {
                 if (pr.finalUrl != null && !pr.finalUrl.isBlank()) url = pr.finalUrl;
+                liveHint = pr.totalLength <= 0;
                 dbg("playOnce: probe ok finalUrl=" + pr.finalUrl + " code=" + pr.httpCode + " ct=" + pr.contentType + " range=" + pr.supportsRange + " cd=" + pr.contentDisposition);
 
                 if (pr.httpCode >= 400) {
@@ -849,38 +896,15 @@ public final class VideoPlayer {
                     }
                 }
 
-                boolean forceCache = false;
                 String ctLower = null;
                 if (pr.contentType != null) {
                     ctLower = pr.contentType.toLowerCase(Locale.ROOT);
-                    // Некоторые хостинги/редиректы отдают text/html на probe,
-                    // но по факту по GET возвращают медиа (или файл по редиректу).
-                    // Дадим шанс disk-cache fallback (с валидацией контента в ensureCachedToDisk).
                     if (ctLower.contains("video/mp4")) {
                         forceMp4Demuxer = true;
                     }
                 }
 
-                if (pr.isHttp) {
-                    if (isDropboxDownloadUrl(url)) {
-                        // Dropbox direct-download ссылки часто плохо перематываются по сети (нестабильный seek/range).
-                        // Кэшируем на диск для стабильной перемотки.
-                        forceCache = true;
-                    }
-                    if (!pr.supportsRange) {
-                        forceCache = true;
-                    }
-                    if (ctLower != null && ctLower.startsWith("text/html")) {
-                        forceCache = true;
-                    } else if (ctLower != null && !(ctLower.startsWith("video/") || ctLower.contains("video/mp4"))) {
-                        if (!ctLower.startsWith("text/")) {
-                            forceCache = true;
-                        }
-                    }
-                    if (pr.contentDisposition != null && !pr.contentDisposition.isBlank()) {
-                        forceCache = true;
-                    }
-                }
+                boolean forceCache = needsDiskCache(pr, url);
 
                 dbg("playOnce: forceCache=" + forceCache + " forceMp4Demuxer=" + forceMp4Demuxer + " url=" + url);
 
@@ -888,58 +912,85 @@ public final class VideoPlayer {
                     // Уведомляем о начале скачивания тяжёлого видео
                     sink.onDownloadStart("collins.video.downloading");
 
-                    Path cachedFile = ensureCachedToDisk(originalUrl, url, pr, sink, mySessionId, this);
-
-                    // Проверяем что сессия ещё активна
-                    if (sessionId != mySessionId || !running) {
-                        dbg("playOnce: session changed during download, aborting");
-                        return false;
-                    }
-
-                    if (cachedFile != null) {
-                        sink.onDownloadComplete();
-                        url = toFFmpegPath(cachedFile.toString());
-                        dbg("playOnce: cached path=" + url);
-                        // Уведомляем о использовании кэшированного файла
-                        try {
-                            long fileSize = Files.size(cachedFile);
-                            sink.onCachedFileUsed(cachedFile.toString(), fileSize);
-                        } catch (Exception ignored) {}
-                        if (ctLower != null && ctLower.contains("video/mp4")) {
-                            forceMp4Demuxer = true;
+                    // сервер умеет Range — играем, не дожидаясь конца скачивания
+                    ProgressiveCache pc = openProgressive(originalUrl, url, pr, CollinsClientConfig.get().downloadConnections);
+                    if (pc != null) {
+                        progressive = pc;
+                        pinCacheKey(pc.hash());
+                        final long totalMb = pc.totalBytes() / (1024L * 1024L);
+                        boolean ready = pc.awaitPrefix(PROGRESSIVE_PRIME_BYTES,
+                                () -> sessionId != mySessionId || !running,
+                                (done, all) -> sink.onDownloadProgress((int) (done * 100L / all), done / (1024L * 1024L), totalMb));
+                        if (sessionId != mySessionId || !running) {
+                            dbg("playOnce: session changed during progressive prime, aborting");
+                            return false;
                         }
-                    } else {
-                        dbg("playOnce: ensureCachedToDisk returned null, trying fallback");
-                        try {
-                            String hash = sha256Hex(originalUrl.trim());
-                            DISK_CACHE_LAST_FAIL_MS.remove(hash);
-                        } catch (Exception ignored) {
+                        if (ready) {
+                            sink.onDownloadComplete();
+                            dbg("playOnce: progressive cache ready, total=" + pc.totalBytes() + " url=" + url);
+                            if (ctLower != null && ctLower.contains("video/mp4")) {
+                                forceMp4Demuxer = true;
+                            }
+                        } else {
+                            dbg("playOnce: progressive prime failed, falling back to full download");
+                            releaseProgressive();
                         }
-                        CacheResult cr = ensureCachedToDiskFallback(originalUrl, url, sink, mySessionId, this);
+                    }
+
+                    if (progressive == null) {
+                        Path cachedFile = ensureCachedToDisk(originalUrl, url, pr, sink, mySessionId, this);
 
                         // Проверяем что сессия ещё активна
                         if (sessionId != mySessionId || !running) {
-                            dbg("playOnce: session changed during fallback download, aborting");
+                            dbg("playOnce: session changed during download, aborting");
                             return false;
                         }
 
-                        if (cr != null && cr.path() != null) {
+                        if (cachedFile != null) {
                             sink.onDownloadComplete();
-                            url = toFFmpegPath(cr.path().toString());
-                            dbg("playOnce: fallback cached path=" + url + " ct=" + cr.contentType());
+                            url = toFFmpegPath(cachedFile.toString());
+                            dbg("playOnce: cached path=" + url);
                             // Уведомляем о использовании кэшированного файла
                             try {
-                                long fileSize = Files.size(cr.path());
-                                sink.onCachedFileUsed(cr.path().toString(), fileSize);
+                                long fileSize = Files.size(cachedFile);
+                                sink.onCachedFileUsed(cachedFile.toString(), fileSize);
                             } catch (Exception ignored) {}
+                            if (ctLower != null && ctLower.contains("video/mp4")) {
+                                forceMp4Demuxer = true;
+                            }
+                        } else {
+                            dbg("playOnce: ensureCachedToDisk returned null, trying fallback");
                             try {
-                                if (cr.contentType() != null && cr.contentType().toLowerCase(Locale.ROOT).contains("video/mp4")) {
-                                    forceMp4Demuxer = true;
-                                }
+                                String hash = sha256Hex(originalUrl.trim());
+                                DISK_CACHE_LAST_FAIL_MS.remove(hash);
                             } catch (Exception ignored) {
                             }
-                        } else {
-                            return false;
+                            CacheResult cr = ensureCachedToDiskFallback(originalUrl, url, sink, mySessionId, this);
+
+                            // Проверяем что сессия ещё активна
+                            if (sessionId != mySessionId || !running) {
+                                dbg("playOnce: session changed during fallback download, aborting");
+                                return false;
+                            }
+
+                            if (cr != null && cr.path() != null) {
+                                sink.onDownloadComplete();
+                                url = toFFmpegPath(cr.path().toString());
+                                dbg("playOnce: fallback cached path=" + url + " ct=" + cr.contentType());
+                                // Уведомляем о использовании кэшированного файла
+                                try {
+                                    long fileSize = Files.size(cr.path());
+                                    sink.onCachedFileUsed(cr.path().toString(), fileSize);
+                                } catch (Exception ignored) {}
+                                try {
+                                    if (cr.contentType() != null && cr.contentType().toLowerCase(Locale.ROOT).contains("video/mp4")) {
+                                        forceMp4Demuxer = true;
+                                    }
+                                } catch (Exception ignored) {
+                                }
+                            } else {
+                                return false;
+                            }
                         }
                     }
                 }
@@ -968,22 +1019,38 @@ public final class VideoPlayer {
                 }
             }
 
-            try (FFmpegFrameGrabber meta = new FFmpegFrameGrabber(url)) {
+            final boolean live = isLiveSource(url, liveHint);
+
+            // Один open на метаданные и декод: для HTTP второй open — это снова TLS, probesize/analyzeduration
+            // и чтение moov. Формат пикселей от видео не зависит и ставится до start(), размер вывода —
+            // после (ширина/высота 0 = исходные), swscale перенастроится на первом grab(), как при смене LOD.
+            pinIfCacheFile(url);
+            FFmpegFrameGrabber meta = newGrabber(url);
+            try {
                 if (forceMp4Demuxer) {
                     try {
                         meta.setFormat("mp4");
                     } catch (Exception ignored) {
                     }
                 }
-                applyNetOptions(meta, url);
+                applyNetOptions(meta, progressive != null ? null : url);
+                applyDecodeThreads(meta, sink.decoderThreads(), live);
+                meta.setPixelFormat(directRgba ? avutil.AV_PIX_FMT_RGBA : avutil.AV_PIX_FMT_BGR24);
+                long openStartNs = System.nanoTime();
                 meta.start();
+                openUs = (System.nanoTime() - openStartNs) / 1000L;
+                VideoStats.GRABBER_OPEN.record(openUs);
                 videoW = meta.getImageWidth();
                 videoH = meta.getImageHeight();
                 fps = meta.getVideoFrameRate();
                 long lenUs = meta.getLengthInTime();
                 durationMs = lenUs > 0 ? (lenUs / 1000L) : 0L;
-                meta.stop();
+                opened = meta;
             } catch (Exception e) {
+                try {
+                    meta.close();
+                } catch (Exception ignored) {
+                }
                 dbg("playOnce: FFmpeg meta failed url=" + url + " err=" + e);
                 // Если это локальный файл из кэша — удаляем его, он повреждён
                 if (!url.startsWith("http://") && !url.startsWith("https://")) {
@@ -992,6 +1059,7 @@ public final class VideoPlayer {
                         if (Files.exists(badFile)) {
                             dbg("playOnce: deleting corrupted cache file: " + url);
                             Files.deleteIfExists(badFile);
+                            DiskCacheManager.removed(badFile);
                             // Удаляем из DISK_CACHE_LAST_FAIL_MS чтобы можно было перезагрузить
                             String hash = sha256Hex(originalUrl.trim());
                             DISK_CACHE_LAST_FAIL_MS.remove(hash);
@@ -1007,71 +1075,61 @@ public final class VideoPlayer {
             if (durationMs < 0 || durationMs > max) durationMs = 0L;
 
             if (fps <= 0) fps = 30.0;
-            META_CACHE.put(originalUrl, new CachedMeta(url, forceMp4Demuxer, videoW, videoH, fps, durationMs, System.currentTimeMillis()));
+            // недокачанный файл не кэшируем: в следующий раз возьмётся готовый файл из дискового кэша
+            if (progressive == null) {
+                META_CACHE.put(originalUrl, new CachedMeta(url, forceMp4Demuxer, videoW, videoH, fps, durationMs, System.currentTimeMillis()));
+                MediaIndex.putMeta(sha256Hex(originalUrl.trim()), url, forceMp4Demuxer, videoW, videoH, fps, durationMs);
+            }
         }
 
         if (videoW <= 0 || videoH <= 0) {
+            if (opened != null) {
+                try {
+                    opened.close();
+                } catch (Exception ignored) {
+                }
+            }
             return false;
         }
 
         // 2) target размер
-        VideoSizeUtil.Size target = VideoSizeUtil.pick(blocksW, blocksH, videoW, videoH);
+        // с учётом ступени LOD (экран далеко — декодируем меньше)
+        int lodH = sink.maxDecodeHeight();
+        VideoSizeUtil.Size target = VideoSizeUtil.pickForHeight(blocksW, blocksH, videoW, videoH, lodH);
 
         // 3) декод
-        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(url)) {
-            if (forceMp4Demuxer) {
-                try {
-                    grabber.setFormat("mp4");
-                } catch (Exception ignored) {
-                }
-            }
-            applyNetOptions(grabber, url);
+        final boolean reused = opened != null;
+        pinIfCacheFile(url);
+        try (FFmpegFrameGrabber grabber = reused ? opened : newGrabber(url)) {
             grabber.setImageWidth(target.w());
             grabber.setImageHeight(target.h());
-            grabber.setPixelFormat(avutil.AV_PIX_FMT_BGR24);
-            grabber.start();
-            dbg("playOnce: FFmpeg started url=" + url + " target=" + target.w() + "x" + target.h() + " forceMp4=" + forceMp4Demuxer);
+            if (!reused) {
+                // метаданные из META_CACHE — граббер открывается здесь впервые
+                if (forceMp4Demuxer) {
+                    try {
+                        grabber.setFormat("mp4");
+                    } catch (Exception ignored) {
+                    }
+                }
+                applyNetOptions(grabber, progressive != null ? null : url);
+                applyDecodeThreads(grabber, sink.decoderThreads(), isLiveSource(url, liveHint));
+                grabber.setPixelFormat(directRgba ? avutil.AV_PIX_FMT_RGBA : avutil.AV_PIX_FMT_BGR24);
+                long openStartNs = System.nanoTime();
+                grabber.start();
+                VideoStats.GRABBER_OPEN.record((System.nanoTime() - openStartNs) / 1000L);
+            }
+            dbg("playOnce: FFmpeg started url=" + url + " target=" + target.w() + "x" + target.h() + " forceMp4=" + forceMp4Demuxer
+                    + " directRgba=" + directRgba + " reused=" + reused + (reused ? " savedOpenMs~" + (openUs / 1000L) : ""));
 
             long openLagMs = (requestEpochMs > 0) ? Math.max(0L, System.currentTimeMillis() - requestEpochMs) : 0L;
             long effectiveSeekMs = seekMs + openLagMs;
 
             if (effectiveSeekMs > 0) {
-                long seekTargetUs = effectiveSeekMs * 1000L;
-                try {
-                    grabber.setTimestamp(seekTargetUs);
-                } catch (Exception e) {
-                }
-
-                try {
-                    long nowUs = grabber.getTimestamp();
-                    if (nowUs >= 0 && nowUs + 50_000L < seekTargetUs) {
-                        int skipped = 0;
-
-                        long needUs = Math.max(0L, seekTargetUs - nowUs);
-                        long needMs = needUs / 1000L;
-
-                        int maxSkipped = (int) Math.min(20_000L, Math.max(600L, (long) (fps * (needMs / 1000.0) + 120)));
-
-                        long startSkipNs = System.nanoTime();
-                        long maxSkipNs = 2_000_000_000L;
-
-                        while (running && skipped < maxSkipped) {
-                            if (System.nanoTime() - startSkipNs > maxSkipNs) break;
-                            Frame f = grabber.grab();
-                            if (f == null) break;
-
-                            long ts = f.timestamp;
-                            if (ts <= 0) ts = grabber.getTimestamp();
-
-                            if (ts >= seekTargetUs - 50_000L) {
-                                // дальше пойдет обычный decode loop
-                                break;
-                            }
-
-                            skipped++;
-                        }
-                    }
-                } catch (Exception ignored) {
+                // ключевой кадр до цели + догон без неопорных кадров (см. SeekEngine)
+                long landedUs = SeekEngine.seek(grabber, effectiveSeekMs * 1000L);
+                if (landedUs + 1_000_000L < effectiveSeekMs * 1000L) {
+                    // не дотянули (не seekable / EOF) — играем с того места, где остановился граббер
+                    dbg("playOnce: seek fell short, landedMs=" + landedUs / 1000L + " targetMs=" + effectiveSeekMs);
                 }
             }
 
@@ -1087,33 +1145,81 @@ public final class VideoPlayer {
             sink.initVideo(videoW, videoH, target.w(), target.h(), fps);
             sink.onDuration(durationMs);
 
-            // кэш для BGR24 данных (не буфер кадров - те теперь в VideoScreen)
-            final int pixels = target.w() * target.h();
-            final byte[] tmpBytes = new byte[pixels * 3];
+            // конвертер BGR24 (держит свои byte[]); в режиме RGBA не нужен
+            final PixelKernel kernel = directRgba ? null : PixelKernels.create();
+            if (kernel != null) dbg("playOnce: pixel kernel=" + kernel.name());
 
             boolean hasAnyAudio = false;
-            long wallStartNs = 0;
-            boolean wallStarted = false;
-
-            try (VideoAudioPlayer audio = new VideoAudioPlayer(sampleRate, channels)) {
+            final long savedOpenUs = openUs;
+            final AtomicBoolean firstFrame = new AtomicBoolean(true);
+            final Runnable onFirstFrame = () -> {
+                if (!firstFrame.compareAndSet(true, false)) return;
+                long ttffUs = (System.nanoTime() - playStartNs) / 1000L;
+                VideoStats.FIRST_FRAME.record(ttffUs);
+                dbg("playOnce: first frame after " + (ttffUs / 1000L) + "ms"
+                        + (reused ? " (single open, saved ~" + (savedOpenUs / 1000L) + "ms)" : ""));
+            };
+
+            try (VideoAudioPlayer audio = new VideoAudioPlayer(sampleRate, channels);
+                 DecodePipeline pipeline = new DecodePipeline(sink, audio, kernel,
+                         () -> running && sessionId == mySessionId, onFirstFrame)) {
                 currentAudio = audio;
                 audio.setGain(gain);
 
                 long baseStreamTsUs = Long.MIN_VALUE;
                 long videoFrameIndex = 0;
 
-                long lastDecodeLogNs = 0;
-                long DECODE_LOG_INTERVAL_NS = 2_000_000_000L;
-                long maxGrabUs = 0;
-                long maxConvertUs = 0;
+                // loop на месте: на EOF demuxer перематывается в начало, кольцо кадров и аудиолиния живут,
+                // а таймстемпы продолжаются со сдвигом loopOffsetUs (без переоткрытия и ребуферизации)
+                final boolean gapless = loop && CollinsClientConfig.get().gaplessLoop;
+                final long frameDurUs = (long) (1_000_000.0 / fps);
+                long loopOffsetUs = 0;
+                long lastRelativeTs = 0;
+                long framesThisPass = 0;
 
                 boolean ended = false;
+                // экран не виден: неключевые видеопакеты не декодируются вовсе (AVDISCARD_NONKEY, звук идёт как обычно).
+                // Назад на полный декод — показываем с ключевого кадра, иначе P-кадры без опоры дадут артефакты.
+                boolean keyframesOnly = false;
+                // discard не применился (нет видеопотока/контекста) — хотя бы без swscale на неключевых кадрах
+                boolean discardApplied = false;
+                boolean waitKeyframe = false;
 
                 while (running) {
+                    boolean throttle = hasAnyAudio && sink.videoThrottled();
+                    if (throttle && !keyframesOnly) {
+                        keyframesOnly = true;
+                        discardApplied = VideoDiscard.set(grabber, avcodec.AVDISCARD_NONKEY);
+                        dbg("playOnce: offscreen, keyframes only (discard=" + discardApplied + ")");
+                    } else if (!throttle && keyframesOnly) {
+                        keyframesOnly = false;
+                        if (discardApplied) VideoDiscard.set(grabber, avcodec.AVDISCARD_DEFAULT);
+                        discardApplied = false;
+                        waitKeyframe = true;
+                    }
+
                     long grabStart = System.nanoTime();
-                    Frame frame = grabber.grab();
-                    long grabEnd = System.nanoTime();
+                    Frame frame = keyframesOnly && !discardApplied
+                            ? grabber.grabFrame(true, true, true, true)
+                            : grabber.grab();
+                    VideoStats.DECODE_STAGE.record((System.nanoTime() - grabStart) / 1000L);
                     if (frame == null) {
+                        if (gapless && framesThisPass > 0 && running) {
+                            boolean rewound = false;
+                            try {
+                                grabber.setTimestamp(0L);
+                                rewound = true;
+                            } catch (Exception e) {
+                                dbg("playOnce: gapless loop seek failed " + e);
+                            }
+                            if (rewound) {
+                                loopOffsetUs = lastRelativeTs + frameDurUs;
+                                baseStreamTsUs = Long.MIN_VALUE;
+                                framesThisPass = 0;
+                                dbg("playOnce: gapless loop, offsetUs=" + loopOffsetUs);
+                                continue;
+                            }
+                        }
                         ended = true;
                         break;
                     }
@@ -1127,27 +1233,43 @@ public final class VideoPlayer {
 
                     if (frame.samples != null) {
                         hasAnyAudio = true;
-
-                        if (!sink.isBufferReady()) {
-                            audio.prebufferSamples(frame.samples, channels);
-                            continue;
-                        }
-
-                        if (!wallStarted) {
-                            wallStarted = true;
-                            wallStartNs = System.nanoTime();
-                            sink.onPlaybackClockStart(wallStartNs);
-                        }
-
-                        if (!audio.isStarted()) audio.startPlayback();
-                        if (audio.hasPrebuffer()) audio.flushPrebuffer();
-                        audio.writeSamples(frame.samples, channels);
+                        // предбуфер, старт часов и запись в линию — в стадии аудио
+                        if (!pipeline.audio.submit(frame.samples, channels)) break;
                         continue;
                     }
 
                     if (frame.image == null || frame.image.length == 0) continue;
 
+                    if (waitKeyframe) {
+                        // кадры до ключевого могут ссылаться на отброшенные — не показываем
+                        if (!frame.keyFrame) continue;
+                        waitKeyframe = false;
+                        dbg("playOnce: visible again, full decode");
+                    }
+
                     videoFrameIndex++;
+                    framesThisPass++;
+                    if (baseStreamTsUs != Long.MIN_VALUE && tsUsForPace > 0) {
+                        lastRelativeTs = Math.max(lastRelativeTs, tsUsForPace - baseStreamTsUs + loopOffsetUs);
+                    }
+
+                    // смена ступени LOD: swscale перенастраивается на следующем grab() без переоткрытия
+                    int wantLodH = sink.maxDecodeHeight();
+                    if (wantLodH != lodH) {
+                        lodH = wantLodH;
+                        VideoSizeUtil.Size next = VideoSizeUtil.pickForHeight(blocksW, blocksH, videoW, videoH, lodH);
+                        if (!next.equals(target)) {
+                            dbg("playOnce: LOD resize " + target.w() + "x" + target.h() + " -> " + next.w() + "x" + next.h());
+                            target = next;
+                            grabber.setImageWidth(next.w());
+                            grabber.setImageHeight(next.h());
+                            sink.onResize(next.w(), next.h());
+                        }
+                    }
+
+                    // пониженный экран: пропускаем кадры до конвертации, render thread покажет ближайший
+                    int divisor = sink.frameDivisor();
+                    if (divisor > 1 && (videoFrameIndex % divisor) != 0) continue;
 
                     if (!hasAnyAudio) {
                         // без аудио: декодер бежит пока буфер не полон
@@ -1159,64 +1281,56 @@ public final class VideoPlayer {
                         }
                     }
 
-                    long convertStart = System.nanoTime(); // ПОСЛЕ пейсинга
+                    ByteBuffer bb = (ByteBuffer) frame.image[0];
+                    if (bb == null) continue;
+
+                    // размер самого кадра: после смены LOD он может отличаться от target на один кадр
+                    int w = frame.imageWidth > 0 ? frame.imageWidth : target.w();
+                    int h = frame.imageHeight > 0 ? frame.imageHeight : target.h();
+                    int strideBytes = frame.imageStride;
+
+                    long relativeTs = (baseStreamTsUs != Long.MIN_VALUE && tsUsForPace > 0) ? (tsUsForPace - baseStreamTsUs) : 0;
+                    relativeTs += loopOffsetUs;
 
-                    // получаем буфер из пула (управляется VideoScreen)
-                    int[] out = sink.borrowBuffer();
+                    if (pipeline.convert != null) {
+                        // BGR24 -> ABGR (0xAABBGGRR) в стадии конвертации; здесь только копия кадра
+                        if (!pipeline.convert.submit(bb, w, h, strideBytes, relativeTs)) break;
+                        continue;
+                    }
+
+                    // RGBA уже сделал swscale внутри grab: слот кольца берём прямо здесь
+                    ByteBuffer out = sink.borrowBuffer();
                     if (out == null) {
                         // пул пуст - ждём
                         LockSupport.parkNanos(1_000_000L);
                         continue;
                     }
+                    if (out.capacity() != w * h * 4) {
+                        // кольцо нового размера ещё не создано на render thread — кадр пропускаем
+                        LockSupport.parkNanos(1_000_000L);
+                        continue;
+                    }
 
-                    int w = target.w();
-                    int h = target.h();
-
-                    // прямое чтение из ByteBuffer (BGR24 формат)
-                    ByteBuffer bb = (ByteBuffer) frame.image[0];
-                    if (bb == null) continue;
-
-                    int strideBytes = frame.imageStride;
-                    int rowBytes = w * 3;
-
-                    // читаем напрямую через bulk get в кэшированный byte[]
+                    // direct -> direct bulk put (memcpy), построчно только при padded stride
+                    int rowBytes = w * 4;
+                    int limit = bb.limit();
                     if (strideBytes <= 0 || strideBytes == rowBytes) {
-                        bb.position(0);
-                        bb.get(tmpBytes, 0, Math.min(tmpBytes.length, bb.remaining()));
+                        out.put(0, bb, 0, Math.min(rowBytes * h, limit));
                     } else {
-                        // с учётом stride
                         for (int y = 0; y < h; y++) {
-                            bb.position(y * strideBytes);
-                            bb.get(tmpBytes, y * rowBytes, Math.min(rowBytes, bb.remaining()));
+                            int srcOff = y * strideBytes;
+                            if (srcOff >= limit) break;
+                            out.put(y * rowBytes, bb, srcOff, Math.min(rowBytes, limit - srcOff));
                         }
                     }
 
-                    // BGR24 -> ABGR (0xAABBGGRR)
-                    for (int i = 0, j = 0; i < pixels; i++, j += 3) {
-                        int b = tmpBytes[j] & 0xFF;
-                        int g = tmpBytes[j + 1] & 0xFF;
-                        int r = tmpBytes[j + 2] & 0xFF;
-                        out[i] = 0xFF000000 | (b << 16) | (g << 8) | r;
-                    }
-
-                    long convertEnd = System.nanoTime();
-
-                    long grabUs = (grabEnd - grabStart) / 1000L;
-                    long convertUs = (convertEnd - convertStart) / 1000L; // только конвертация, без пейсинга
-                    if (grabUs > maxGrabUs) maxGrabUs = grabUs;
-                    if (convertUs > maxConvertUs) maxConvertUs = convertUs;
-
-                    if (convertEnd - lastDecodeLogNs >= DECODE_LOG_INTERVAL_NS) {
-                        lastDecodeLogNs = convertEnd;
-                        maxGrabUs = 0;
-                        maxConvertUs = 0;
-                    }
-
-                    long relativeTs = (baseStreamTsUs != Long.MIN_VALUE && tsUsForPace > 0) ? (tsUsForPace - baseStreamTsUs) : 0;
-                    sink.onFrame(out, target.w(), target.h(), relativeTs);
+                    sink.onFrame(out, w, h, relativeTs);
+                    onFirstFrame.run();
                 }
 
                 if (ended) {
+                    // доиграть звук и дорисовать кадры, уже отданные стадиям
+                    pipeline.drain();
                     sink.onEnded(durationMs);
                 }
 
@@ -1231,12 +1345,211 @@ public final class VideoPlayer {
 
         } catch (Exception e) {
             dbg("playOnce: FFmpeg decode failed url=" + url + " err=" + e);
+            if (fromMetaCache) {
+                // сохранённый url мог протухнуть — следующая попытка пойдёт через resolve/probe
+                META_CACHE.remove(originalUrl);
+                MediaIndex.forgetMeta(sha256Hex(originalUrl.trim()));
+            }
             return false;
         }
 
         return true;
     }
 
+    /**
+     * Метаданные из постоянного индекса. Локальный файл — только если он всё ещё в кэше и цел,
+     * http-url — только пока не старше PERSISTED_HTTP_META_TTL_MS (ссылки хостингов протухают).
+     */
+    private static CachedMeta persistedMeta(String originalUrl) {
+        try {
+            String hash = sha256Hex(originalUrl.trim());
+            MediaIndex.Entry e = MediaIndex.get(hash);
+            if (e == null || !e.hasMeta()) return null;
+
+            String resolved = e.resolvedUrl();
+            long nowMs = System.currentTimeMillis();
+            if (resolved.startsWith("http://") || resolved.startsWith("https://")) {
+                if (nowMs - e.metaAtMs() > PERSISTED_HTTP_META_TTL_MS) return null;
+            } else {
+                Path p = findExistingCacheFile(getCacheDir(), hash);
+                if (p == null || !isValidCachedFile(hash, p)) return null;
+                resolved = p.toString();
+            }
+
+            CachedMeta m = new CachedMeta(resolved, e.forceMp4Demuxer(), e.videoW(), e.videoH(), e.fps(), e.durationMs(), nowMs);
+            META_CACHE.put(originalUrl, m);
+            DiskCacheManager.accessed(hash);
+            dbg("playOnce: meta from persistent index " + resolved);
+            return m;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /** Локальный файл из кэша — закрепить, пока играет (повторный вызов ничего не делает). */
+    private void pinIfCacheFile(String url) {
+        if (pinnedKey != null || url == null || url.startsWith("http://") || url.startsWith("https://")) return;
+        try {
+            Path p = Path.of(url);
+            if (!p.startsWith(getCacheDir())) return;
+            pinCacheKey(MediaIndex.keyOf(p.getFileName().toString()));
+        } catch (Exception ignored) {
+        }
+    }
+
+    private void pinCacheKey(String key) {
+        if (pinnedKey != null) return;
+        pinnedKey = key;
+        DiskCacheManager.pin(key);
+    }
+
+    private void unpinCacheFile() {
+        String key = pinnedKey;
+        pinnedKey = null;
+        if (key != null) DiskCacheManager.unpin(key);
+    }
+
+    /** Граббер по url или, если файл играется во время скачивания, по потоку прогрессивного кэша. */
+    private FFmpegFrameGrabber newGrabber(String url) {
+        ProgressiveCache pc = progressive;
+        // maximumSize > 0: только тогда JavaCV ставит AVIO seek (reset() + skip()) — без него поток
+        // только вперёд, moov в конце файла не открыть и setTimestamp при входе в сеанс не работает
+        if (pc != null) return new FFmpegFrameGrabber(pc.openStream(), (int) Math.min(Integer.MAX_VALUE, pc.totalBytes()));
+        return new FFmpegFrameGrabber(url);
+    }
+
+    /** Отпустить прогрессивный кэш; если файл докачан и больше никем не читается — перенести в кэш. */
+    private void releaseProgressive() {
+        ProgressiveCache pc = progressive;
+        progressive = null;
+        if (pc != null) releaseProgressive(pc);
+    }
+
+    private static void releaseProgressive(ProgressiveCache pc) {
+        Path done = pc.release();
+        if (done != null) {
+            Path dst = finishCachedDownload(done.getParent(), done, pc.target(), pc.hash());
+            dbg("progressive: promoted to cache " + dst);
+        }
+    }
+
+    /**
+     * Прогрессивный кэш для файла, который иначе пришлось бы скачать целиком до старта.
+     * null — нельзя (нет Range/длины, html, выключено в конфиге) или файл уже есть в кэше.
+     */
+    private static ProgressiveCache openProgressive(String cacheKeyUrl, String downloadUrl, ProbeResult pr, int connections) {
+        if (!CollinsClientConfig.get().progressiveCache) return null;
+        if (pr == null || !pr.supportsRange || pr.httpCode >= 400) return null;
+        if (pr.totalLength <= 0 || pr.totalLength > DISK_CACHE_MAX_BYTES) return null;
+        if (pr.contentType != null && pr.contentType.toLowerCase(Locale.ROOT).startsWith("text/html")) return null;
+        if (cacheKeyUrl == null || downloadUrl == null) return null;
+
+        String u = stripFragment(downloadUrl.trim());
+        if (!(u.startsWith("http://") || u.startsWith("https://"))) return null;
+
+        try {
+            String hash = sha256Hex(cacheKeyUrl.trim());
+            Path dir = getCacheDir();
+            Files.createDirectories(dir);
+
+            // готовый файл отдаст ensureCachedToDisk без скачивания
+            Path existing = findExistingCacheFile(dir, hash);
+            if (existing != null && isValidCachedFile(hash, existing)) return null;
+
+            Long lastFail = DISK_CACHE_LAST_FAIL_MS.get(hash);
+            if (lastFail != null && (System.currentTimeMillis() - lastFail) < DISK_CACHE_FAIL_COOLDOWN_MS) return null;
+
+            Path dst = dir.resolve(hash + guessCacheExtension(u, pr.contentType));
+            ProgressiveCache pc = ProgressiveCache.acquire(hash, u, dir, pr.totalLength, dst, connections);
+            // .prog выделен целиком — в размер кэша сразу и полностью (вне ACTIVE: вытеснение его спрашивает)
+            if (pc != null) DiskCacheManager.partialAdded(hash, pc.file(), pc.totalBytes());
+            enforceDiskCacheLimit(dir, DISK_CACHE_MAX_BYTES);
+            return pc;
+        } catch (Exception e) {
+            dbg("progressive: open failed " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Фоновая подготовка url до того, как игрок подошёл к экрану (см. {@link PrefetchService}).
+     * Готовый файл кэша — метаданные из индекса в META_CACHE. Иначе probe (его результат кэширует
+     * {@link HttpProbe}), и если файл всё равно будет играться с диска — его начало качается одним
+     * соединением в прогрессивный кэш, тот же, что потом подхватит плеер. Чужое место в кэше не вытесняется.
+     * @return сколько байт скачано
+     */
+    static long prefetch(String url, long prefixBytes, BooleanSupplier cancelled) {
+        String originalUrl = stripFragment(url);
+        if (originalUrl == null || originalUrl.isBlank()) return 0L;
+
+        CachedMeta m = META_CACHE.get(originalUrl);
+        if (m != null && (System.currentTimeMillis() - m.cachedAtMs()) <= META_TTL_MS) return 0L;
+        if (persistedMeta(originalUrl) != null) return 0L;
+        if (cancelled.getAsBoolean()) return 0L;
+
+        ProbeResult pr = probeUrl(originalUrl);
+        if (pr == null || pr.httpCode >= 400) return 0L;
+        String u = (pr.finalUrl != null && !pr.finalUrl.isBlank()) ? pr.finalUrl : originalUrl;
+        if (prefixBytes <= 0 || !needsDiskCache(pr, u) || cancelled.getAsBoolean()) return 0L;
+
+        String hash = sha256Hex(originalUrl.trim());
+        // уже качает плеер — не мешаем его курсору чтения
+        if (ProgressiveCache.isActive(hash)) return 0L;
+        try {
+            if (pr.totalLength <= 0 || DiskCacheManager.totalBytes() + pr.totalLength > DISK_CACHE_MAX_BYTES) return 0L;
+            if (getCacheDir().toFile().getUsableSpace() < pr.totalLength + PREFETCH_MIN_FREE_BYTES) return 0L;
+        } catch (Exception e) {
+            return 0L;
+        }
+
+        ProgressiveCache pc = openProgressive(originalUrl, u, pr, 1);
+        if (pc == null) return 0L;
+        long before = pc.downloadedBytes();
+        try {
+            pc.awaitPrefix(prefixBytes, cancelled, null);
+            return Math.max(0L, pc.downloadedBytes() - before);
+        } finally {
+            releaseProgressive(pc);
+        }
+    }
+
+    /** Файл играется только с диска: плохой seek по сети, нет Range, html/вложение вместо видео. */
+    private static boolean needsDiskCache(ProbeResult pr, String url) {
+        if (!pr.isHttp) return false;
+        // Dropbox direct-download ссылки часто плохо перематываются по сети (нестабильный seek/range).
+        if (isDropboxDownloadUrl(url)) return true;
+        if (!pr.supportsRange) return true;
+        if (pr.contentType != null) {
+            // Некоторые хостинги/редиректы отдают text/html на probe, но по GET возвращают медиа —
+            // даём шанс disk-cache (с валидацией контента в ensureCachedToDisk).
+            String ct = pr.contentType.toLowerCase(Locale.ROOT);
+            if (ct.startsWith("text/html")) return true;
+            if (!(ct.startsWith("video/") || ct.contains("video/mp4")) && !ct.startsWith("text/")) return true;
+        }
+        return pr.contentDisposition != null && !pr.contentDisposition.isBlank();
+    }
+
+    /** http без известного размера/длительности или HLS; файлы (в т.ч. прогрессивный кэш) — нет. */
+    private boolean isLiveSource(String url, boolean liveHint) {
+        if (progressive != null || url == null) return false;
+        if (!(url.startsWith("http://") || url.startsWith("https://"))) return false;
+        return liveHint || url.toLowerCase(Locale.ROOT).contains(".m3u8");
+    }
+
+    /**
+     * Потоки декодера. Файлы — frame-threading (лучшая пропускная способность, задержка на N кадров
+     * неважна, впереди буфер), трансляции — slice (кадр выходит сразу). Число потоков задаёт
+     * {@link DecodeScheduler}, чтобы несколько экранов не делили ядра по "auto" каждый на все.
+     */
+    private static void applyDecodeThreads(FFmpegFrameGrabber g, int threads, boolean live) {
+        try {
+            g.setVideoOption("threads", threads > 0 ? Integer.toString(threads) : "auto");
+            g.setVideoOption("thread_type", live ? "slice" : "frame");
+        } catch (Exception ignored) {
+        }
+        dbg("decode threads=" + (threads > 0 ? threads : "auto") + " type=" + (live ? "slice" : "frame"));
+    }
+
     private static void applyNetOptions(FFmpegFrameGrabber g, String url) {
         // Применяем сетевые опции только для HTTP/HTTPS URL
         boolean isHttp = url != null && (url.startsWith("http://") || url.startsWith("https://"));
@@ -1270,53 +1583,6 @@ public final class VideoPlayer {
         }
     }
 
-    private static String tryResolveUrl(String url) {
-        if (url == null) return null;
-        String u = url.trim();
-        if (!(u.startsWith("http://") || u.startsWith("https://"))) return null;
-
-        // Некоторые сокращатели/хостинги делают несколько редиректов.
-        // FFmpeg умеет редиректы, но иногда долго; попробуем быстро получить финальный URL.
-        try {
-            String cur = u;
-            for (int i = 0; i < 5; i++) {
-                URL base = new URL(cur);
-                HttpURLConnection c = (HttpURLConnection) base.openConnection();
-                c.setInstanceFollowRedirects(false);
-                c.setRequestMethod("GET");
-                c.setConnectTimeout(5000);
-                c.setReadTimeout(5000);
-                c.setRequestProperty("User-Agent", "Mozilla/5.0");
-                c.setRequestProperty("Accept", "*/*");
-                c.setRequestProperty("Accept-Encoding", "identity");
-
-                int code = c.getResponseCode();
-
-                if (code >= 300 && code < 400) {
-                    String loc = c.getHeaderField("Location");
-                    if (loc == null || loc.isBlank()) {
-                        c.disconnect();
-                        break;
-                    }
-                    URL next = new URL(base, loc);
-                    c.disconnect();
-                    cur = next.toString();
-                    continue;
-                }
-
-                if (code == 401 || code == 403) {
-                    c.disconnect();
-                    return null;
-                }
-
-                c.disconnect();
-                return cur.equals(u) ? null : cur;
-            }
-        } catch (Exception ignored) {
-        }
-        return null;
-    }
-
     private static final class ProbeResult {
         final String finalUrl;
         final String contentType;
@@ -1324,94 +1590,27 @@ public final class VideoPlayer {
         final boolean isHttp;
         final String contentDisposition;
         final int httpCode;
+        final long totalLength; // полный размер файла (из Content-Range / Content-Length), -1 если неизвестен
 
-        private ProbeResult(String finalUrl, String contentType, boolean supportsRange, boolean isHttp, String contentDisposition, int httpCode) {
+        private ProbeResult(String finalUrl, String contentType, boolean supportsRange, boolean isHttp, String contentDisposition, int httpCode, long totalLength) {
             this.finalUrl = finalUrl;
             this.contentType = contentType;
             this.supportsRange = supportsRange;
             this.isHttp = isHttp;
             this.contentDisposition = contentDisposition;
             this.httpCode = httpCode;
+            this.totalLength = totalLength;
         }
     }
 
     private static ProbeResult probeUrl(String url) {
         if (url == null) return null;
         String u = stripFragment(url.trim());
-        boolean isHttp = (u.startsWith("http://") || u.startsWith("https://"));
-        if (!isHttp) return null;
-
-        try {
-            String cur = u;
-            for (int i = 0; i < 5; i++) {
-                URL base = new URL(cur);
-                HttpURLConnection c = (HttpURLConnection) base.openConnection();
-                c.setInstanceFollowRedirects(false);
-                c.setRequestMethod("GET");
-                c.setConnectTimeout(5000);
-                c.setReadTimeout(5000);
-                c.setRequestProperty("User-Agent", "Mozilla/5.0");
-                c.setRequestProperty("Accept", "*/*");
-                c.setRequestProperty("Range", "bytes=0-1");
-                c.setRequestProperty("Accept-Encoding", "identity");
-
-                int code = c.getResponseCode();
-                dbg("probe: GET " + cur + " -> " + code);
-
-                if (code == 401 || code == 403 || code == 416) {
-                    try { c.disconnect(); } catch (Exception ignored) {}
-                    c = (HttpURLConnection) base.openConnection();
-                    c.setInstanceFollowRedirects(false);
-                    c.setRequestMethod("GET");
-                    c.setConnectTimeout(8000);
-                    c.setReadTimeout(8000);
-                    c.setRequestProperty("User-Agent", "Mozilla/5.0");
-                    c.setRequestProperty("Accept", "*/*");
-                    c.setRequestProperty("Accept-Encoding", "identity");
-                    code = c.getResponseCode();
-                    dbg("probe: retry GET(no-range) " + cur + " -> " + code);
-                }
-
-                if (code >= 300 && code < 400) {
-                    String loc = c.getHeaderField("Location");
-                    c.disconnect();
-                    if (loc == null || loc.isBlank()) return new ProbeResult(cur, null, false, true, null, code);
-                    URL next = new URL(base, loc);
-                    cur = next.toString();
-                    continue;
-                }
-
-                if (code < 200 || code >= 400) {
-                    String ct = null;
-                    try {
-                        ct = c.getHeaderField("Content-Type");
-                    } catch (Exception ignored) {
-                    }
-                    dbg("probe: http error code=" + code + " url=" + cur + " ct=" + ct);
-                    c.disconnect();
-                    return new ProbeResult(cur, ct, false, true, null, code);
-                }
-
-                String ct = c.getHeaderField("Content-Type");
-                String ar = c.getHeaderField("Accept-Ranges");
-                boolean supportsRange = false;
-                if (code == 206) supportsRange = true;
-                if (ar != null && ar.toLowerCase(Locale.ROOT).contains("bytes")) supportsRange = true;
-                String cd = c.getHeaderField("Content-Disposition");
-                long len = -1L;
-                try {
-                    len = c.getContentLengthLong();
-                } catch (Exception ignored) {
-                }
-                dbg("probe: finalUrl=" + cur + " ct=" + ct + " ar=" + ar + " len=" + len + " supportsRange=" + supportsRange + " cd=" + cd);
-                c.disconnect();
-                return new ProbeResult(cur, ct, supportsRange, true, cd, code);
-            }
-        } catch (Exception e) {
-            dbg("probe: exception " + e + " url=" + u);
-        }
+        if (!(u.startsWith("http://") || u.startsWith("https://"))) return null;
 
-        return null;
+        HttpProbe.Result r = HttpProbe.probe(u);
+        if (r == null) return null;
+        return new ProbeResult(r.finalUrl(), r.contentType(), r.supportsRange(), true, r.contentDisposition(), r.httpCode(), r.totalLength());
     }
 
     private static Path ensureCachedToDisk(String cacheKeyUrl, String downloadUrl, ProbeResult pr,
@@ -1423,13 +1622,15 @@ public final class VideoPlayer {
         String key = cacheKeyUrl.trim();
         String u = stripFragment(downloadUrl.trim());
         if (!(u.startsWith("http://") || u.startsWith("https://"))) return null;
+        // редиректы уже пройдены probe — качаем сразу с итогового url
+        String from = (pr.finalUrl != null && !pr.finalUrl.isBlank()) ? pr.finalUrl : u;
 
         String hash = sha256Hex(key);
         Object lock = DISK_CACHE_LOCKS.computeIfAbsent(hash, k -> new Object());
 
         synchronized (lock) {
             try {
-                dbg("cache: start keyHash=" + hash + " url=" + u);
+                dbg("cache: start keyHash=" + hash + " url=" + from);
                 Path dir = getCacheDir();
                 Files.createDirectories(dir);
 
@@ -1458,11 +1659,8 @@ public final class VideoPlayer {
                         long sz = Files.size(existing);
                         if (sz > 0 && sz <= DISK_CACHE_MAX_BYTES) {
                             // Проверяем валидность кэша через FFmpeg
-                            if (isValidMediaFile(existing)) {
-                                try {
-                                    Files.setLastModifiedTime(existing, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis()));
-                                } catch (Exception ignored) {
-                                }
+                            if (isValidCachedFile(hash, existing)) {
+                                DiskCacheManager.accessed(hash);
                                 enforceDiskCacheLimit(dir, DISK_CACHE_MAX_BYTES);
                                 DISK_CACHE_LAST_FAIL_MS.remove(hash);
                                 dbg("cache: using valid existing file keyHash=" + hash);
@@ -1483,6 +1681,7 @@ public final class VideoPlayer {
                         Files.deleteIfExists(existing);
                     } catch (Exception ignored) {
                     }
+                    DiskCacheManager.removed(existing);
                 }
 
                 Long lastFail = DISK_CACHE_LAST_FAIL_MS.get(hash);
@@ -1499,47 +1698,79 @@ public final class VideoPlayer {
                 } catch (Exception ignored) {
                 }
 
-                HttpURLConnection c = (HttpURLConnection) new URL(u).openConnection();
-                c.setInstanceFollowRedirects(true);
-                c.setRequestMethod("GET");
-                c.setConnectTimeout(15_000);
-                c.setReadTimeout(60_000); // Увеличен для больших файлов
-                c.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64)");
-                c.setRequestProperty("Accept", "*/*");
-                c.setRequestProperty("Accept-Encoding", "identity");
+                // Большой файл и сервер умеет Range — качаем кусками в несколько соединений
+                int connections = CollinsClientConfig.get().downloadConnections;
+                boolean probeHtml = pr.contentType != null && pr.contentType.toLowerCase(Locale.ROOT).startsWith("text/html");
+                if (connections > 1 && pr.supportsRange && !probeHtml
+                        && pr.totalLength >= SEGMENTED_MIN_BYTES && pr.totalLength <= DISK_CACHE_MAX_BYTES) {
+                    Path dst = dir.resolve(hash + guessCacheExtension(u, pr.contentType));
+                    final long total = pr.totalLength;
+                    final long totalMb = total / (1024L * 1024L);
+                    boolean ok = false;
+                    try {
+                        ok = SegmentedDownloader.download(from, tmp, total, connections,
+                                () -> player != null && player.sessionId != sessionId,
+                                (done, all) -> {
+                                    if (sink != null) {
+                                        sink.onDownloadProgress((int) (done * 100L / all), done / (1024L * 1024L), totalMb);
+                                    }
+                                });
+                    } catch (Exception e) {
+                        dbg("cache: segmented download error " + e);
+                    }
+
+                    if (player != null && player.sessionId != sessionId) {
+                        dbg("cache: session changed during segmented download, aborting");
+                        try {
+                            Files.deleteIfExists(tmp);
+                        } catch (Exception ignored) {
+                        }
+                        return null;
+                    }
+
+                    if (ok) {
+                        dbg("cache: segmented download done bytes=" + total + " -> " + dst);
+                        return finishCachedDownload(dir, tmp, dst, hash);
+                    }
+
+                    // не вышло кусками — пробуем одним потоком ниже
+                    dbg("cache: segmented download failed, falling back to single stream");
+                    try {
+                        Files.deleteIfExists(tmp);
+                    } catch (Exception ignored) {
+                    }
+                }
+
+                // общий HttpClient (см. HttpProbe): соединение после probe переиспользуется
+                HttpResponse<InputStream> resp = HttpProbe.client().send(
+                        HttpProbe.request(from, null, DOWNLOAD_HEADERS_TIMEOUT).build(),
+                        HttpResponse.BodyHandlers.ofInputStream());
 
-                int code = c.getResponseCode();
+                int code = resp.statusCode();
                 if (code < 200 || code >= 400) {
-                    dbg("cache: non-2xx code=" + code + " url=" + u);
-                    c.disconnect();
+                    dbg("cache: non-2xx code=" + code + " url=" + from);
+                    closeQuietly(resp.body());
                     DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
                     return null;
                 }
 
-                long declaredLen = -1L;
-                try {
-                    declaredLen = c.getContentLengthLong();
-                } catch (Exception ignored) {
-                }
+                long declaredLen = resp.headers().firstValueAsLong("Content-Length").orElse(-1L);
                 dbg("cache: contentLength=" + declaredLen);
                 if (declaredLen > DISK_CACHE_MAX_BYTES) {
-                    c.disconnect();
+                    closeQuietly(resp.body());
                     DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
                     return null;
                 }
 
-                String actualCt = null;
-                try {
-                    actualCt = c.getHeaderField("Content-Type");
-                } catch (Exception ignored) {
-                }
-                dbg("cache: contentType=" + actualCt + " url=" + u);
+                String actualCt = resp.headers().firstValue("Content-Type").orElse(null);
+                dbg("cache: contentType=" + actualCt + " url=" + from);
                 String ext = guessCacheExtension(u, actualCt != null ? actualCt : pr.contentType);
                 Path dst = dir.resolve(hash + ext);
 
                 long written = 0L;
                 long lastProgressLog = 0L;
-                try (InputStream in = c.getInputStream(); OutputStream out = Files.newOutputStream(tmp)) {
+                try (InputStream in = HttpProbe.idleTimeout(resp.body(), DOWNLOAD_READ_IDLE_MS);
+                     OutputStream out = Files.newOutputStream(tmp)) {
                     // Если probe видел text/html, но мы всё равно пытаемся кэшировать —
                     // защитимся от сохранения HTML-страницы в кэш.
                     boolean ctHtml = false;
@@ -1615,84 +1846,86 @@ public final class VideoPlayer {
                             return null;
                         }
                     }
-                } finally {
-                    c.disconnect();
                 }
 
                 dbg("cache: downloaded bytes=" + written + " -> " + dst);
+                return finishCachedDownload(dir, tmp, dst, hash);
+            } catch (Exception e) {
+                dbg("cache: exception " + e);
+                DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
+                return null;
+            }
+        }
+    }
 
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** .part -> итоговый файл, проверка размера и лимита кэша. null — не получилось (ставим cooldown). */
+    private static Path finishCachedDownload(Path dir, Path tmp, Path dst, String hash) {
+        try {
+            Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dbg("cache: atomic move succeeded");
+        } catch (Exception e) {
+            dbg("cache: atomic move failed, trying regular move: " + e.getMessage());
+            try {
+                Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING);
+                dbg("cache: regular move succeeded");
+            } catch (Exception moveErr) {
+                dbg("cache: regular move also failed: " + moveErr.getMessage());
                 try {
-                    Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-                    dbg("cache: atomic move succeeded");
-                } catch (Exception e) {
-                    dbg("cache: atomic move failed, trying regular move: " + e.getMessage());
-                    try {
-                        Files.move(tmp, dst, StandardCopyOption.REPLACE_EXISTING);
-                        dbg("cache: regular move succeeded");
-                    } catch (Exception moveErr) {
-                        dbg("cache: regular move also failed: " + moveErr.getMessage());
-                        try {
-                            Files.deleteIfExists(tmp);
-                        } catch (Exception ignored2) {
-                        }
-                        DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
-                        return null;
-                    }
+                    Files.deleteIfExists(tmp);
+                } catch (Exception ignored2) {
                 }
+                DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
+                return null;
+            }
+        }
 
+        try {
+            long sz = Files.size(dst);
+            dbg("cache: final file size=" + sz);
+            if (sz <= 0 || sz > DISK_CACHE_MAX_BYTES) {
+                dbg("cache: invalid file size, deleting");
                 try {
-                    long sz = Files.size(dst);
-                    dbg("cache: final file size=" + sz);
-                    if (sz <= 0 || sz > DISK_CACHE_MAX_BYTES) {
-                        dbg("cache: invalid file size, deleting");
-                        try {
-                            Files.deleteIfExists(dst);
-                        } catch (Exception ignored) {
-                        }
-                        DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
-                        return null;
-                    }
-                } catch (Exception e) {
-                    dbg("cache: failed to check file size: " + e.getMessage());
+                    Files.deleteIfExists(dst);
+                } catch (Exception ignored) {
                 }
-
-                enforceDiskCacheLimit(dir, DISK_CACHE_MAX_BYTES);
-                DISK_CACHE_LAST_FAIL_MS.remove(hash);
-                dbg("cache: success, returning " + dst);
-                return dst;
-            } catch (Exception e) {
-                dbg("cache: exception " + e);
                 DISK_CACHE_LAST_FAIL_MS.put(hash, System.currentTimeMillis());
                 return null;
             }
+        } catch (Exception e) {
+            dbg("cache: failed to check file size: " + e.getMessage());
         }
+
+        DiskCacheManager.added(hash, dst);
+        enforceDiskCacheLimit(dir, DISK_CACHE_MAX_BYTES);
+        DISK_CACHE_LAST_FAIL_MS.remove(hash);
+        dbg("cache: success, returning " + dst);
+        return dst;
     }
 
+    /** Файл кэша по индексу (см. MediaIndex), без обхода папки. */
     private static Path findExistingCacheFile(Path dir, String hash) {
         try {
-            Path bin = dir.resolve(hash + ".bin");
-            if (Files.isRegularFile(bin)) return bin;
-
-            try (var s = Files.list(dir)) {
-                return s.filter(p -> {
-                            try {
-                                if (!Files.isRegularFile(p)) return false;
-                                String n = p.getFileName().toString();
-                                if (!n.startsWith(hash + ".")) return false;
-                                if (n.endsWith(".part")) return false;
-                                return true;
-                            } catch (Exception e) {
-                                return false;
-                            }
-                        })
-                        .findFirst()
-                        .orElse(null);
-            }
+            return MediaIndex.cachedFile(dir, hash);
         } catch (Exception ignored) {
             return null;
         }
     }
 
+    /** Проверка файла кэша: по индексу (размер + контрольная сумма), полная — только для новых/изменённых. */
+    private static boolean isValidCachedFile(String hash, Path file) {
+        if (MediaIndex.isValidated(hash, file)) return true;
+        if (!isValidMediaFile(file)) return false;
+        MediaIndex.markValidated(hash, file);
+        return true;
+    }
+
     private static String guessCacheExtension(String url, String contentType) {
         try {
             if (contentType != null) {
@@ -1722,7 +1955,7 @@ public final class VideoPlayer {
         }
     }
 
-    private static Path getCacheDir() {
+    static Path getCacheDir() {
         try {
             // Сначала пробуем стандартный путь
             Path gameDir = FabricLoader.getInstance().getGameDir();
@@ -1796,55 +2029,9 @@ public final class VideoPlayer {
         }
     }
 
+    /** Лимит кэша: вытеснение по LRU в фоне (см. DiskCacheManager), без обхода папки. */
     private static void enforceDiskCacheLimit(Path dir, long maxBytes) {
-        try {
-            if (!Files.isDirectory(dir)) return;
-
-            List<Path> files = new ArrayList<>();
-            long total = 0L;
-            try (var s = Files.list(dir)) {
-                s.forEach(p -> {
-                    try {
-                        if (Files.isRegularFile(p) && !p.getFileName().toString().endsWith(".part")) {
-                            files.add(p);
-                        }
-                    } catch (Exception ignored) {
-                    }
-                });
-            }
-
-            for (Path p : files) {
-                try {
-                    total += Files.size(p);
-                } catch (Exception ignored) {
-                }
-            }
-
-            if (total <= maxBytes) return;
-
-            files.sort(Comparator.comparingLong(p -> {
-                try {
-                    return Files.getLastModifiedTime(p).toMillis();
-                } catch (Exception e) {
-                    return 0L;
-                }
-            }));
-
-            for (Path p : files) {
-                if (total <= maxBytes) break;
-                long sz = 0L;
-                try {
-                    sz = Files.size(p);
-                } catch (Exception ignored) {
-                }
-                try {
-                    Files.deleteIfExists(p);
-                } catch (Exception ignored) {
-                }
-                total -= sz;
-            }
-        } catch (Exception ignored) {
-        }
+        DiskCacheManager.evictAsync(maxBytes);
     }
 
     private static String sha256Hex(String s) {
@@ -1881,19 +2068,9 @@ public final class VideoPlayer {
                 return new CacheInfo(dir, 0L, 0, freeSpace);
             }
 
-            long totalSize = 0L;
-            int count = 0;
-            try (var stream = Files.list(dir)) {
-                var files = stream.toList();
-                for (Path p : files) {
-                    if (Files.isRegularFile(p) && !p.getFileName().toString().endsWith(".part")) {
-                        try {
-                            totalSize += Files.size(p);
-                            count++;
-                        } catch (Exception ignored) {}
-                    }
-                }
-            }
+            // размер и число файлов — из индекса кэша
+            long totalSize = DiskCacheManager.totalBytes();
+            int count = DiskCacheManager.count();
 
             long freeSpace = dir.toFile().getFreeSpace();
             return new CacheInfo(dir, totalSize, count, freeSpace);
@@ -1908,19 +2085,8 @@ public final class VideoPlayer {
             Path dir = getCacheDir();
             if (!Files.isDirectory(dir)) return 0L;
 
-            long deleted = 0L;
-            try (var stream = Files.list(dir)) {
-                var files = stream.toList();
-                for (Path p : files) {
-                    if (Files.isRegularFile(p)) {
-                        try {
-                            long sz = Files.size(p);
-                            Files.deleteIfExists(p);
-                            deleted += sz;
-                        } catch (Exception ignored) {}
-                    }
-                }
-            }
+            // играющие сейчас файлы остаются (закреплены)
+            long deleted = DiskCacheManager.clear(dir);
             return deleted;
         } catch (Exception e) {
             return 0L;
@@ -1933,6 +2099,7 @@ public final class VideoPlayer {
             Path p = Path.of(filePath);
             if (Files.exists(p)) {
                 Files.deleteIfExists(p);
+                DiskCacheManager.removed(p);
                 return true;
             }
         } catch (Exception ignored) {}
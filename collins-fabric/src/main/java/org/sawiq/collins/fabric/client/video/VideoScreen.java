@@ -2,6 +2,7 @@ package org.sawiq.collins.fabric.client.video;
 
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.GlTexture;
 import net.minecraft.client.texture.NativeImageBackedTexture;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.Vec3d;
@@ -10,10 +11,9 @@ import org.sawiq.collins.fabric.client.config.CollinsClientConfig;
 import org.sawiq.collins.fabric.client.state.ScreenState;
 import org.sawiq.collins.fabric.mixin.NativeImageAccessor;
 
-import java.nio.IntBuffer;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 public final class VideoScreen implements VideoPlayer.FrameSink {
@@ -30,10 +30,21 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
 
     private VideoPlayer player;
 
+    // общий декодер: ведомый экран показывает текстуру ведущего (см. VideoScreenManager)
+    private volatile VideoScreen shareLeader = null;
+    private volatile List<VideoScreen> shareFollowers = List.of();
+
+    // грант от DecodeScheduler
+    private volatile DecodeScheduler.Grant grant = DecodeScheduler.Grant.FULL;
+
     private int texW, texH;
 
     private long nativePtr = 0;
-    private IntBuffer nativeDst = null;
+
+    // асинхронная заливка через PBO (null — обычный texture.upload())
+    private static final int PBO_SLOTS = 3;
+    private PboTextureUploader pbo;
+    private int glTexId = 0;
 
     private volatile boolean started = false;
     private String startedUrl = "";
@@ -55,23 +66,36 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
     private volatile long displayStartPosMs = 0;
     private volatile long displayWallStartNs = 0;
 
-    // ===== Очередь кадров для буферизации =====
+    // ===== Кольцо кадров для буферизации =====
     private record InitReq(int videoW, int videoH, int targetW, int targetH, double fps) {}
-    private record FrameData(int[] abgr, int w, int h, long timestampUs) {}
-    // ожидаем ABGR (см. VideoPlayer), timestampUs = позиция кадра в микросекундах
+    // ожидаем RGBA в памяти (= ABGR int, см. VideoPlayer), метка кадра = позиция в микросекундах
 
     private final AtomicReference<InitReq> pendingInit = new AtomicReference<>(null);
-    private final ConcurrentLinkedQueue<FrameData> frameQueue = new ConcurrentLinkedQueue<>();
-    private final AtomicInteger frameQueueSize = new AtomicInteger(0);
     private final AtomicBoolean pendingStop = new AtomicBoolean(false);
-    
-    // пул свободных буферов - буферы возвращаются после показа кадра
-    private final ConcurrentLinkedQueue<int[]> freeBuffers = new ConcurrentLinkedQueue<>();
-    private static final int BUFFER_POOL_SIZE = 60; // должен быть > MAX_BUFFER_FRAMES
-    
+    private final AtomicReference<InitReq> pendingResize = new AtomicReference<>(null);
+
+    // SPSC кольцо: декодер пишет, render thread читает. Пересоздаётся в applyPendingInit (на слотах старого).
+    private volatile FrameRing ring = null;
+    // кольцо нового размера после смены LOD: декодер пишет сюда, пока render thread досматривает старое
+    private volatile FrameRing pendingRing = null;
+    private int pendingW, pendingH;
+    // досмотренное кольцо прошлого размера (render thread): его слоты берёт следующая смена LOD
+    private FrameRing spareRing = null;
+
+    // видимость (render thread): экран в кадре и когда последний раз был виден кто-то из группы
+    private boolean quadVisible = true;
+    private boolean visibleThisFrame = true;
+    private volatile long lastVisibleNs = 0;
+    private static final long OFFSCREEN_THROTTLE_DELAY_NS = 1_000_000_000L;
+
+    // ступень LOD (макс. высота кадра), выбирается в VideoScreenManager
+    private volatile int lodHeight = 0;
+    private long lodChangedAtMs = 0;
+
     // буферизация: ждём пока накопится минимум кадров перед показом
     private static final int MIN_BUFFER_FRAMES = 15; // ~0.5 сек при 30fps
-    private static final int MAX_BUFFER_FRAMES = 45; // ~1.5 сек максимум
+    // ёмкость кольца задаёт DecodeScheduler (FULL ~1.5 сек, REDUCED меньше)
+    private int minBufferFrames = MIN_BUFFER_FRAMES;
     private volatile boolean buffering = true; // тру пока буферизуем
     // ====================================================================
 
@@ -137,9 +161,71 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         }
     }
 
-    public boolean hasTexture() { return texture != null && texId != null; }
+    public boolean hasTexture() {
+        VideoScreen l = shareLeader;
+        if (l != null) return l.hasTexture();
+        return texture != null && texId != null;
+    }
+
+    public Identifier textureId() {
+        VideoScreen l = shareLeader;
+        return l != null ? l.textureId() : texId;
+    }
+
+    // ===== Общий декодер =====
+
+    /**
+     * leader != null — экран ведомый: свой декодер и текстура освобождаются, показывается кадр ведущего.
+     * leader == null — экран декодирует сам; followers — ведомые, ради которых он тоже должен играть.
+     */
+    void setShareGroup(VideoScreen leader, List<VideoScreen> followers) {
+        this.shareFollowers = (followers == null) ? List.of() : followers;
+        if (leader == this) leader = null;
+        if (leader == shareLeader) return;
 
-    public Identifier textureId() { return texId; }
+        this.shareLeader = leader;
+        if (leader != null) {
+            stop();
+            releaseTexture();
+        }
+    }
+
+    boolean isShareFollower() { return shareLeader != null; }
+
+    List<VideoScreen> shareFollowers() { return shareFollowers; }
+
+    private void releaseTexture() {
+        closePbo();
+        ring = null;
+        pendingRing = null;
+        spareRing = null;
+        if (texture != null) {
+            texture.close();
+            texture = null;
+        }
+        nativePtr = 0;
+        texW = 0;
+        texH = 0;
+    }
+
+    // размер/громкость группы: текстура ведущего должна хватать самому большому экрану
+    private int groupBlocksW() {
+        int w = state.blocksW();
+        for (VideoScreen f : shareFollowers) w = Math.max(w, f.state().blocksW());
+        return w;
+    }
+
+    private int groupBlocksH() {
+        int h = state.blocksH();
+        for (VideoScreen f : shareFollowers) h = Math.max(h, f.state().blocksH());
+        return h;
+    }
+
+    private float groupVolume() {
+        float v = state.volume();
+        for (VideoScreen f : shareFollowers) v = Math.max(v, f.state().volume());
+        return v;
+    }
 
     public void tickPlayback(Vec3d playerPos, int radiusBlocks, float globalVolume, long serverNowMs) {
         long tickStart = System.nanoTime();
@@ -154,6 +240,9 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         applyPendingStop();
         applyPendingInit();
 
+        // ведомый экран ничего не декодирует — всё делает ведущий
+        if (shareLeader != null) return;
+
         CollinsClientConfig cfg = CollinsClientConfig.get();
 
         // 1.1) если в конфиге выключено — полностью останавливаем (и видео, и звук)
@@ -204,9 +293,12 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         }
 
         long posMs = currentVideoPosMs(serverNowMs);
-        float gain = Math.max(0f, globalVolume) * Math.max(0f, state.volume()) * cfg.localVolumeMultiplier();
+        float gain = Math.max(0f, globalVolume) * Math.max(0f, groupVolume()) * cfg.localVolumeMultiplier();
 
-        if (player == null) player = new VideoPlayer(this);
+        if (player == null) {
+            player = new VideoPlayer(this);
+            player.setDecodePriority(grant == DecodeScheduler.Grant.FULL ? Thread.MAX_PRIORITY : Thread.NORM_PRIORITY);
+        }
 
         // Если видео закончилось — просто замораживаем отображение, не очищаем текстуру
         if (ended && endedUrl.equals(state.url())) {
@@ -224,6 +316,12 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
             return;
         }
 
+        // планировщик забрал декодер: останавливаем, последний кадр остаётся в текстуре
+        if (grant == DecodeScheduler.Grant.SUSPENDED) {
+            if (started) stop();
+            return;
+        }
+
         if (!started || !startedUrl.equals(state.url())) {
             started = true;
             startedUrl = state.url();
@@ -235,7 +333,7 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
             displayFrozenPosMs = posMs;
             displayStartPosMs = posMs;
             displayWallStartNs = 0;
-            player.start(state.url(), state.blocksW(), state.blocksH(), state.loop(), posMs, gain);
+            player.start(state.url(), groupBlocksW(), groupBlocksH(), state.loop(), posMs, gain);
             return;
         }
 
@@ -258,6 +356,29 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         }
     }
 
+    // ===== Видимость (вызывается из VideoScreenRenderer на render thread) =====
+
+    void beginVisibilityFrame() {
+        visibleThisFrame = false;
+    }
+
+    void markVisible() {
+        visibleThisFrame = true;
+        lastVisibleNs = System.nanoTime();
+    }
+
+    void setQuadVisible(boolean v) {
+        quadVisible = v;
+    }
+
+    boolean isQuadVisible() {
+        return quadVisible;
+    }
+
+    VideoScreen shareLeader() {
+        return shareLeader;
+    }
+
     public void renderPlayback() {
         if (!started) return;
         if (!CollinsClientConfig.get().renderVideo) return;
@@ -266,7 +387,16 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
     }
 
     private boolean isInHearRadius(Vec3d playerPos, int radiusBlocks) {
-        if (playerPos == null) return false;
+        if (isInHearRadius(state, playerPos, radiusBlocks)) return true;
+        // ведущий играет, пока в радиусе хоть один экран группы
+        for (VideoScreen f : shareFollowers) {
+            if (isInHearRadius(f.state(), playerPos, radiusBlocks)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isInHearRadius(ScreenState state, Vec3d playerPos, int radiusBlocks) {
+        if (playerPos == null || state == null) return false;
         if (radiusBlocks <= 0) return true;
 
         double cx = (state.minX() + state.maxX() + 1) * 0.5;
@@ -290,8 +420,7 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         startedUrl = "";
         lastGain = -1f;
 
-        frameQueue.clear();
-        frameQueueSize.set(0);
+        clearRing();
         buffering = true;
         playbackStartNs = 0;
         framesShown = 0;
@@ -326,6 +455,27 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
             texId = Identifier.of("collins", "screen/" + state.name().toLowerCase());
         }
 
+        createTexture(true);
+
+        // новое кольцо кадров на слотах старого (выделяются только недостающие) и сбрасываем пейсинг
+        int ringFrames = DecodeScheduler.ringFrames(grant);
+        FrameRing donor = ring != null ? ring : spareRing;
+        pendingResize.set(null);
+        pendingRing = null;
+        spareRing = null;
+        ring = new FrameRing(ringFrames, texW * texH, donor);
+        minBufferFrames = Math.min(MIN_BUFFER_FRAMES, ringFrames / 2);
+        buffering = true;
+        playbackStartNs = 0;
+        framesShown = 0;
+        lastUploadLogNs = 0;
+
+        if (DEBUG) System.out.println("[Collins] initVideo " + texW + "x" + texH + " fps=" + videoFps + " ring=" + ringFrames + " pbo=" + (pbo != null) + " buffering...");
+    }
+
+    /** (Пере)создаёт текстуру texW x texH; fill — залить заглушкой до первого кадра. */
+    private void createTexture(boolean fill) {
+        closePbo();
         if (texture != null) {
             texture.close();
             texture = null;
@@ -337,55 +487,113 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         NativeImage imgForPtr = texture.getImage();
         if (imgForPtr != null) {
             nativePtr = ((NativeImageAccessor) (Object) imgForPtr).collins$getPointer();
-            nativeDst = MemoryUtil.memIntBuffer(nativePtr, texW * texH);
         } else {
             nativePtr = 0;
-            nativeDst = null;
         }
 
         // быстро заливаем цветом (без двойных циклов)
         NativeImage img = texture.getImage();
-        if (img != null) {
+        if (fill && img != null) {
             img.fillRect(0, 0, texW, texH, 0xFFFF00FF);
         }
 
-        texture.upload();
+        if (fill) texture.upload();
 
-        // очередь кадров и сбрасываем пейсинг
-        frameQueue.clear();
-        frameQueueSize.set(0);
-        buffering = true;
-        playbackStartNs = 0;
-        framesShown = 0;
-        lastUploadLogNs = 0;
-        
-        // пул буферов
-        freeBuffers.clear();
-        int pixels = texW * texH;
-        for (int i = 0; i < BUFFER_POOL_SIZE; i++) {
-            freeBuffers.offer(new int[pixels]);
+        if (CollinsClientConfig.get().pboUpload && PboTextureUploader.isSupported()) {
+            try {
+                glTexId = ((GlTexture) texture.getGlTexture()).getGlId();
+                pbo = new PboTextureUploader(texW, texH, PBO_SLOTS);
+            } catch (Throwable t) {
+                if (DEBUG) System.out.println("[Collins] PBO init failed: " + t);
+                closePbo();
+            }
+        }
+    }
+
+    /**
+     * Декодер сменил размер кадра (LOD): заводим кольцо нового размера для продюсера.
+     * Старое кольцо досматривается со старой текстурой, переключение — в uploadPendingFrameFast.
+     * Слоты берутся у кольца, досмотренного на прошлой смене (или у так и не показанного pendingRing),
+     * поэтому переключение LOD туда-обратно не плодит direct-буферы для GC.
+     */
+    private void applyPendingResize() {
+        InitReq req = pendingResize.getAndSet(null);
+        if (req == null || texture == null) return;
+
+        int pixels = req.targetW() * req.targetH();
+        FrameRing r = ring;
+        int ringFrames = (r != null) ? r.capacity() : DecodeScheduler.ringFrames(grant);
+        FrameRing donor = pendingRing != null ? pendingRing : spareRing;
+        spareRing = null;
+        pendingRing = new FrameRing(ringFrames, pixels, donor);
+        pendingW = req.targetW();
+        pendingH = req.targetH();
+
+        if (DEBUG) System.out.println("[Collins] resize -> " + pendingW + "x" + pendingH + " (old " + texW + "x" + texH + ")");
+    }
+
+    /** Старое кольцо досмотрено — переходим на текстуру и кольцо нового размера, пейсинг не трогаем. */
+    private FrameRing swapToResizedRing(FrameRing next) {
+        texW = pendingW;
+        texH = pendingH;
+        createTexture(false);
+        spareRing = ring;
+        ring = next;
+        pendingRing = null;
+        return next;
+    }
+
+    private FrameRing producerRing() {
+        FrameRing p = pendingRing;
+        return p != null ? p : ring;
+    }
+
+    private void closePbo() {
+        if (pbo != null) {
+            try {
+                pbo.close();
+            } catch (Throwable ignored) {
+            }
+            pbo = null;
         }
+        glTexId = 0;
+    }
 
-        if (DEBUG) System.out.println("[Collins] initVideo " + texW + "x" + texH + " fps=" + videoFps + " pool=" + BUFFER_POOL_SIZE + " buffering...");
+    private void clearRing() {
+        FrameRing r = ring;
+        if (r != null) r.clear();
+        pendingResize.set(null);
+        pendingRing = null;
     }
 
     /**
-     * Берём кадр из очереди с пейсингом по fps видео.
+     * Берём кадр из кольца с пейсингом по fps видео.
      * Буферизация: ждём пока накопится минимум кадров перед показом.
      */
     private void uploadPendingFrameFast() {
         if (texture == null) return;
 
-        int queueSize = frameQueueSize.get();
+        applyPendingResize();
+
+        FrameRing r = ring;
+        if (r == null) return;
+
+        // смена разрешения: как только старые кадры показаны и готов кадр нового размера
+        FrameRing next = pendingRing;
+        if (next != null && r.isEmpty() && !next.isEmpty()) {
+            r = swapToResizedRing(next);
+        }
+
+        int queueSize = r.size();
         
         // Буферизация:
         if (buffering) {
             long now = System.nanoTime();
             if (now - lastUploadLogNs >= UPLOAD_LOG_INTERVAL_NS) {
                 lastUploadLogNs = now;
-                if (DEBUG) System.out.println("[Collins] buffering... " + queueSize + "/" + MIN_BUFFER_FRAMES + " frames");
+                if (DEBUG) System.out.println("[Collins] buffering... " + queueSize + "/" + minBufferFrames + " frames");
             }
-            if (queueSize < MIN_BUFFER_FRAMES) {
+            if (queueSize < minBufferFrames) {
                 return; // ещё буферизуем
             }
             buffering = false;
@@ -404,62 +612,64 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         long now = System.nanoTime();
         long elapsedUs = (now - playbackStartNs) / 1000L;
 
-        FrameData frame = frameQueue.peek();
-        if (frame == null) return;
-
-        FrameData chosen = null;
-        while (true) {
-            FrameData next = frameQueue.peek();
-            if (next == null) break;
-            if (next.timestampUs() > elapsedUs) break;
+        int available = r.size();
+        if (available <= 0) return;
+        if (r.peekTimestamp(0) > elapsedUs) return;
 
-            chosen = frameQueue.poll();
-            if (chosen == null) break;
-            frameQueueSize.decrementAndGet();
+        // берём самый свежий "созревший" кадр, более ранние отбрасываем
+        while (available > 1 && r.peekTimestamp(1) <= elapsedUs) {
+            r.advance();
+            available--;
+        }
 
-            FrameData peekAfter = frameQueue.peek();
-            if (peekAfter != null && peekAfter.timestampUs() <= elapsedUs) {
-                freeBuffers.offer(chosen.abgr());
-                chosen = null;
-            }
+        // экран не виден: кадр не заливаем, только освобождаем слот (декодер не встаёт)
+        if (!visibleThisFrame) {
+            r.advance();
+            VideoStats.CULLED_FRAMES.increment();
+            return;
         }
 
-        if (chosen == null) return;
-        frame = chosen;
+        long frameTsUs = r.peekTimestamp(0);
+        ByteBuffer rgba = r.peekBuffer();
         framesShown++;
 
-        int w = frame.w();
-        int h = frame.h();
-        int[] abgr = frame.abgr();
-        
-        if (w != texW || h != texH) {
-            // Размер не совпадает - возвращаем буфер в пул и пропускаем
-            freeBuffers.offer(abgr);
+        long dst = nativePtr;
+        if (dst == 0 || r.pixels() != texW * texH) {
+            r.advance();
             return;
         }
 
-        IntBuffer dst = nativeDst;
-        if (dst == null) {
-            freeBuffers.offer(abgr);
+        long uploadStart = System.nanoTime();
+        long src = MemoryUtil.memAddress(rgba);
+
+        // PBO: memcpy в mapped-буфер + glTexSubImage2D без ожидания драйвера
+        // (NativeImage при этом не обновляется — он нужен только обычному пути)
+        PboTextureUploader p = pbo;
+        if (p != null && p.upload(glTexId, src)) {
+            r.advance();
+            long end = System.nanoTime();
+            VideoStats.UPLOAD_PBO.record((end - uploadStart) / 1000L);
+            logUpload(end, elapsedUs, frameTsUs, queueSize);
             return;
         }
-        int pixels = texW * texH;
 
-        long copyStart = System.nanoTime();
-        dst.position(0);
-        dst.put(abgr, 0, pixels);
+        // слот уже в формате NativeImage (RGBA) — один memcpy без конвертации
+        MemoryUtil.memCopy(src, dst, r.frameBytes());
+
+        // ВАЖНО: слот освобождаем только после копирования
+        r.advance();
 
-        long uploadStart = System.nanoTime();
         texture.upload();
         long end = System.nanoTime();
-        
-        // ВАЖНО: возвращаем буфер в пул после использования
-        freeBuffers.offer(abgr);
+        VideoStats.UPLOAD_SYNC.record((end - uploadStart) / 1000L);
+        logUpload(end, elapsedUs, frameTsUs, queueSize);
+    }
 
+    private void logUpload(long end, long elapsedUs, long frameTsUs, int queueSize) {
         if (end - lastUploadLogNs >= UPLOAD_LOG_INTERVAL_NS) {
             lastUploadLogNs = end;
-            long lagUs = elapsedUs - frame.timestampUs();
-            if (DEBUG) System.out.println("[Collins] frame " + framesShown + " ts=" + (frame.timestampUs()/1000) + "ms lag=" + (lagUs/1000) + "ms queue=" + queueSize);
+            long lagUs = elapsedUs - frameTsUs;
+            if (DEBUG) System.out.println("[Collins] frame " + framesShown + " ts=" + (frameTsUs/1000) + "ms lag=" + (lagUs/1000) + "ms queue=" + queueSize);
         }
     }
 
@@ -475,6 +685,8 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
     }
 
     public long currentPosMsForDisplay(long serverNowMs) {
+        VideoScreen l = shareLeader;
+        if (l != null) return l.currentPosMsForDisplay(serverNowMs);
         if (displayFrozen) {
             return clampToDuration(Math.max(0L, displayFrozenPosMs));
         }
@@ -487,7 +699,8 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
     }
 
     public long durationMs() {
-        return durationMs;
+        VideoScreen l = shareLeader;
+        return l != null ? l.durationMs() : durationMs;
     }
 
     public void stop() {
@@ -497,8 +710,7 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         startedUrl = "";
         lastGain = -1f;
 
-        frameQueue.clear();
-        frameQueueSize.set(0);
+        clearRing();
         buffering = true;
 
         playbackStartNs = 0;
@@ -545,23 +757,17 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
     }
 
     @Override
-    public void onFrame(int[] abgr, int w, int h, long timestampUs) {
-        if (abgr == null) return;
+    public void onFrame(ByteBuffer rgba, int w, int h, long timestampUs) {
+        if (rgba == null) return;
 
-        if (!CollinsClientConfig.get().renderVideo) {
-            freeBuffers.offer(abgr);
-            return;
-        }
-        
-        // Ограничиваем размер очереди чтобы не съесть всю память
-        if (frameQueueSize.get() >= MAX_BUFFER_FRAMES) {
-            // Очередь полна - декодер должен ждать
-            freeBuffers.offer(abgr);
-            return;
-        }
-        
-        frameQueue.offer(new FrameData(abgr, w, h, timestampUs));
-        frameQueueSize.incrementAndGet();
+        // не публикуем — слот остаётся свободным для следующего кадра
+        if (!CollinsClientConfig.get().renderVideo) return;
+
+        FrameRing r = producerRing();
+        if (r == null || r.pixels() != w * h) return;
+
+        // буфер из старого кольца (после повторного initVideo) или кольцо полно — кадр отбрасывается
+        r.publish(rgba, timestampUs);
     }
 
     @Override
@@ -574,6 +780,8 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         if (d > 0 && !state.loop()) {
             return Math.min(Math.max(0L, posMs), d);
         }
+        // loop: позиция внутри текущего прохода (декодер зацикливается сам, см. VideoPlayer)
+        if (d > 0) return Math.max(0L, posMs) % d;
         return Math.max(0L, posMs);
     }
 
@@ -587,21 +795,60 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
 
     @Override
     public boolean canAcceptFrame() {
-        return frameQueueSize.get() < MAX_BUFFER_FRAMES;
+        FrameRing r = producerRing();
+        return r != null && r.hasSpace();
     }
 
     @Override
-    public int[] borrowBuffer() {
-        return freeBuffers.poll();
+    public ByteBuffer borrowBuffer() {
+        FrameRing r = producerRing();
+        return r != null ? r.claim() : null;
     }
 
     @Override
-    public void returnBuffer(int[] buf) {
-        if (buf != null) {
-            freeBuffers.offer(buf);
+    public void onResize(int targetW, int targetH) {
+        pendingResize.set(new InitReq(0, 0, targetW, targetH, videoFps));
+    }
+
+    @Override
+    public boolean videoThrottled() {
+        if (!CollinsClientConfig.get().offscreenKeyframesOnly) return false;
+        long lv = lastVisibleNs;
+        // ещё ни разу не рисовался (например, только запустился) — не душим
+        if (lv == 0) return false;
+        return System.nanoTime() - lv > OFFSCREEN_THROTTLE_DELAY_NS;
+    }
+
+    @Override
+    public int maxDecodeHeight() {
+        return CollinsClientConfig.get().adaptiveResolution ? lodHeight : 0;
+    }
+
+    /** Пересчёт ступени LOD по видимому размеру (пиксели окна), с гистерезисом. */
+    void updateLod(double footprintPx, long nowMs) {
+        int next = ScreenLod.select(lodHeight, footprintPx, nowMs, lodChangedAtMs);
+        if (next != lodHeight) {
+            if (DEBUG) System.out.println("[Collins] LOD " + state.name() + ": " + lodHeight + " -> " + next + " footprint=" + (int) footprintPx + "px");
+            lodHeight = next;
+            lodChangedAtMs = nowMs;
         }
     }
 
+    @Override
+    public void returnBuffer(ByteBuffer buf) {
+        // слот из claim() не занят до publish(), возвращать нечего
+    }
+
+    @Override
+    public int frameDivisor() {
+        return grant == DecodeScheduler.Grant.REDUCED ? 2 : 1;
+    }
+
+    @Override
+    public int decoderThreads() {
+        return DecodeScheduler.decoderThreads(grant);
+    }
+
     @Override
     public boolean isBufferReady() {
         // Буфер готов когда буферизация закончена
@@ -630,10 +877,10 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
     }
 
     // Геттеры для состояния скачивания (для отображения в HUD)
-    public boolean isDownloading() { return downloading; }
-    public int getDownloadPercent() { return downloadPercent; }
-    public long getDownloadedMb() { return downloadedMb; }
-    public long getDownloadTotalMb() { return downloadTotalMb; }
+    public boolean isDownloading() { VideoScreen l = shareLeader; return l != null ? l.isDownloading() : downloading; }
+    public int getDownloadPercent() { VideoScreen l = shareLeader; return l != null ? l.getDownloadPercent() : downloadPercent; }
+    public long getDownloadedMb() { VideoScreen l = shareLeader; return l != null ? l.getDownloadedMb() : downloadedMb; }
+    public long getDownloadTotalMb() { VideoScreen l = shareLeader; return l != null ? l.getDownloadTotalMb() : downloadTotalMb; }
 
     // Информация о кэшированном файле (для предложения удаления)
     private volatile String cachedFilePath = null;
@@ -646,14 +893,16 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
         if (DEBUG) System.out.println("[CollinsScreen] onCachedFileUsed: path=" + cachedFilePath + " size=" + (fileSizeBytes / (1024L * 1024L)) + "MB");
     }
 
-    public String getCachedFilePath() { return cachedFilePath; }
-    public long getCachedFileSizeMb() { return cachedFileSizeBytes / (1024L * 1024L); }
-    public boolean hasCachedFile() { return cachedFilePath != null && !cachedFilePath.isEmpty(); }
+    public String getCachedFilePath() { VideoScreen l = shareLeader; return l != null ? l.getCachedFilePath() : cachedFilePath; }
+    public long getCachedFileSizeMb() { VideoScreen l = shareLeader; return l != null ? l.getCachedFileSizeMb() : cachedFileSizeBytes / (1024L * 1024L); }
+    public boolean hasCachedFile() { String p = getCachedFilePath(); return p != null && !p.isEmpty(); }
 
     // Геттер для проверки окончания видео (показывать "Сеанс окончен" в течение 5 секунд)
     private static final long ENDED_DISPLAY_DURATION_MS = 5000L;
 
     public boolean isEnded() {
+        VideoScreen l = shareLeader;
+        if (l != null) return l.isEnded();
         if (!ended) return false;
         // Показываем "Сеанс окончен" только 5 секунд
         if (endedAtMs > 0 && System.currentTimeMillis() - endedAtMs > ENDED_DISPLAY_DURATION_MS) {
@@ -663,7 +912,21 @@ public final class VideoScreen implements VideoPlayer.FrameSink {
     }
 
     // Возвращает true если видео закончилось (без ограничения по времени)
-    public boolean hasEnded() { return ended; }
+    public boolean hasEnded() { VideoScreen l = shareLeader; return l != null ? l.hasEnded() : ended; }
+
+    DecodeScheduler.Grant grant() { return grant; }
+
+    void setGrant(DecodeScheduler.Grant g) {
+        if (g == null || g == grant) return;
+        grant = g;
+        if (player != null) {
+            player.setDecodePriority(g == DecodeScheduler.Grant.FULL ? Thread.MAX_PRIORITY : Thread.NORM_PRIORITY);
+        }
+    }
+
+    boolean isDecoding() {
+        return started && player != null && player.isRunning();
+    }
 
     public int texW() { return texW; }
     public int texH() { return texH; }
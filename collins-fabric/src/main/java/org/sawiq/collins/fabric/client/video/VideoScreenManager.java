@@ -34,6 +34,9 @@ public final class VideoScreenManager {
     private static final Text PREFIX = Text.literal("[Collins-Fabric] ").setStyle(Style.EMPTY.withColor(GREEN));
 
     private static volatile long lastActionbarUpdateMs = 0;
+
+    private static final int LOD_INTERVAL_TICKS = 10;
+    private static int lodTicks = 0;
     private static volatile String lastClientWorldKey = "";
 
     static String currentWorldKey(MinecraftClient client) {
@@ -162,44 +165,106 @@ public final class VideoScreenManager {
         return best;
     }
 
+    /** Полный список экранов: трогаются только удалённые, новые и изменившиеся (ScreenState — record). */
     public static void applySync(Map<String, ScreenState> incoming) {
-        Set<String> keep = new HashSet<>(incoming.keySet());
+        boolean changed = false;
 
         // 1) удалённые экраны
         for (String key : new ArrayList<>(SCREENS.keySet())) {
-            if (!keep.contains(key)) {
-                VideoScreen vs = SCREENS.remove(key);
-                if (vs != null) {
-                    if (DEBUG) System.out.println("[Collins] STOP by remove: key=" + key);
-                    vs.stop();
-                }
-            }
+            if (!incoming.containsKey(key)) changed |= removeScreen(key);
         }
 
         // 2) обновляем существующие/создаём новые
         for (var e : incoming.entrySet()) {
-            String key = e.getKey();
-            ScreenState st = e.getValue();
-
-            VideoScreen vs = SCREENS.get(key);
-            if (vs == null) {
-                vs = new VideoScreen(st);
-                SCREENS.put(key, vs);
-                if (DEBUG) System.out.println("[Collins] screen created: key=" + key + " name=" + st.name());
-            } else {
-                vs.updateState(st);
-            }
+            VideoScreen vs = SCREENS.get(e.getKey());
+            if (vs != null && e.getValue().equals(vs.state())) continue;
+            putScreen(e.getKey(), e.getValue());
+            changed = true;
+        }
 
-            // 3) если сервер сказал остановить — останавливаем
-            if (!st.playing() || st.url() == null || st.url().isEmpty()) {
-                if (DEBUG) System.out.println("[Collins] STOP by sync: name=" + st.name()
-                        + " playing=" + st.playing()
-                        + " url=" + st.url());
-                vs.stop();
-            }
+        if (changed) afterScreensChanged();
+    }
+
+    /** Дельта v3: один экран создан/изменён (в т.ч. только таймер). Остальные экраны не трогаем. */
+    public static void applyUpsert(String key, ScreenState st) {
+        putScreen(key, st);
+        afterScreensChanged();
+    }
+
+    /** Дельта v3: экран удалён. */
+    public static void applyRemove(String key) {
+        if (removeScreen(key)) afterScreensChanged();
+    }
+
+    private static boolean removeScreen(String key) {
+        VideoScreen vs = SCREENS.remove(key);
+        if (vs == null) return false;
+        if (DEBUG) System.out.println("[Collins] STOP by remove: key=" + key);
+        vs.stop();
+        return true;
+    }
+
+    private static void putScreen(String key, ScreenState st) {
+        VideoScreen vs = SCREENS.get(key);
+        if (vs == null) {
+            vs = new VideoScreen(st);
+            SCREENS.put(key, vs);
+            if (DEBUG) System.out.println("[Collins] screen created: key=" + key + " name=" + st.name());
+        } else {
+            vs.updateState(st);
+        }
+
+        // 3) если сервер сказал остановить — останавливаем
+        if (!st.playing() || st.url() == null || st.url().isEmpty()) {
+            if (DEBUG) System.out.println("[Collins] STOP by sync: name=" + st.name()
+                    + " playing=" + st.playing()
+                    + " url=" + st.url());
+            vs.stop();
         }
     }
 
+    private static void afterScreensChanged() {
+        // одинаковые (url, якоря) — один декодер на группу
+        regroupSharedDecode();
+
+        // набор экранов поменялся — перераспределяем декодеры на ближайшем тике
+        DecodeScheduler.invalidate();
+
+        // url ещё не играющих экранов — разрешить и подготовить в фоне, пока игрок до них не дошёл
+        prefetchScreens(MinecraftClient.getInstance());
+    }
+
+    private static void prefetchScreens(MinecraftClient client) {
+        Vec3d pos = (client != null && client.player != null) ? client.player.getEntityPos() : null;
+
+        List<VideoScreen> pending = new ArrayList<>();
+        for (VideoScreen s : SCREENS.values()) {
+            ScreenState st = s.state();
+            if (st == null || !st.playing() || st.url() == null || st.url().isEmpty()) continue;
+            if (!isCompatibleWithCurrentWorld(st, client)) continue;
+            if (s.isShareFollower() || s.isDecoding()) continue;
+            pending.add(s);
+        }
+        if (pending.isEmpty()) return;
+
+        if (pos != null) {
+            pending.sort(Comparator.comparingDouble(s -> centerDist2(s.state(), pos)));
+        }
+        List<String> urls = new ArrayList<>(pending.size());
+        for (VideoScreen s : pending) {
+            String url = s.state().url();
+            if (!urls.contains(url)) urls.add(url);
+        }
+        PrefetchService.submit(urls);
+    }
+
+    private static double centerDist2(ScreenState st, Vec3d pos) {
+        double dx = pos.x - (st.minX() + st.maxX() + 1) * 0.5;
+        double dy = pos.y - (st.minY() + st.maxY() + 1) * 0.5;
+        double dz = pos.z - (st.minZ() + st.maxZ() + 1) * 0.5;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
     public static void tick(MinecraftClient client) {
         PlayerEntity p = client.player;
         if (p == null) return;
@@ -210,6 +275,7 @@ public final class VideoScreenManager {
         if (!worldKey.equals(lastClientWorldKey)) {
             lastClientWorldKey = worldKey;
             stopAllPlayback();
+            PrefetchService.cancelAll();
         }
 
         Vec3d pos = p.getEntityPos();
@@ -220,6 +286,15 @@ public final class VideoScreenManager {
 
         long serverNowMs = estimateServerNowMs();
 
+        // гранты декодеров (раз в секунду): лимит потоков и памяти кадров
+        DecodeScheduler.tick(client, SCREENS.values(), pos, radius);
+
+        // ступени разрешения по видимому размеру экранов
+        if (++lodTicks >= LOD_INTERVAL_TICKS) {
+            lodTicks = 0;
+            updateLod(client);
+        }
+
         for (VideoScreen s : SCREENS.values()) {
             ScreenState st = s.state();
             if (st != null && !isCompatibleWithCurrentWorld(st, client)) {
@@ -297,6 +372,84 @@ public final class VideoScreenManager {
         }
     }
 
+    // ==================== LOD ====================
+
+    private static void updateLod(MinecraftClient client) {
+        long now = System.currentTimeMillis();
+        for (VideoScreen s : SCREENS.values()) {
+            if (s.isShareFollower()) continue;
+            ScreenState st = s.state();
+            if (st == null || !st.playing()) continue;
+
+            // ведущему общего декодера нужна ступень самого крупного на мониторе экрана группы
+            double fp = ScreenLod.footprintPx(client, st);
+            for (VideoScreen f : s.shareFollowers()) {
+                fp = Math.max(fp, ScreenLod.footprintPx(client, f.state()));
+            }
+            s.updateLod(fp, now);
+        }
+    }
+
+    // ==================== Общий декодер ====================
+
+    private static String shareKey(ScreenState st) {
+        if (st == null || !st.playing() || st.url() == null || st.url().isEmpty()) return null;
+        return st.world() + "|" + st.url() + "|" + st.startEpochMs() + "|" + st.basePosMs() + "|" + st.loop();
+    }
+
+    /**
+     * Экраны с одним url и одинаковыми якорями синхронизации показывают один и тот же кадр,
+     * поэтому декодирует только ведущий, остальные рисуют его текстуру.
+     * Ведущий — тот, кто уже играет (чтобы не перезапускать декодер), иначе самый большой экран.
+     */
+    private static void regroupSharedDecode() {
+        Map<String, List<VideoScreen>> groups = new HashMap<>();
+        boolean enabled = CollinsClientConfig.get().sharedDecode;
+
+        for (VideoScreen s : SCREENS.values()) {
+            String key = enabled ? shareKey(s.state()) : null;
+            if (key == null) {
+                s.setShareGroup(null, List.of());
+                continue;
+            }
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(s);
+        }
+
+        for (List<VideoScreen> group : groups.values()) {
+            if (group.size() == 1) {
+                group.get(0).setShareGroup(null, List.of());
+                continue;
+            }
+
+            VideoScreen leader = null;
+            for (VideoScreen s : group) {
+                if (!s.isShareFollower() && s.isDecoding()) {
+                    leader = s;
+                    break;
+                }
+            }
+            if (leader == null) {
+                for (VideoScreen s : group) {
+                    if (leader == null || area(s.state()) > area(leader.state())) leader = s;
+                }
+            }
+
+            List<VideoScreen> followers = new ArrayList<>(group.size() - 1);
+            for (VideoScreen s : group) {
+                if (s != leader) followers.add(s);
+            }
+
+            leader.setShareGroup(null, List.copyOf(followers));
+            for (VideoScreen f : followers) f.setShareGroup(leader, List.of());
+
+            if (DEBUG) System.out.println("[Collins] shared decode: leader=" + leader.state().name() + " followers=" + followers.size());
+        }
+    }
+
+    private static long area(ScreenState st) {
+        return (long) st.blocksW() * st.blocksH();
+    }
+
     public static long estimateServerNowMs() {
         long sn = CollinsNet.SERVER_NOW_MS;
         long cr = CollinsNet.CLIENT_RECV_MS;
@@ -308,6 +461,7 @@ public final class VideoScreenManager {
         if (DEBUG) System.out.println("[Collins] stopAll()");
         for (VideoScreen s : SCREENS.values()) s.stop();
         SCREENS.clear();
+        PrefetchService.cancelAll();
     }
 
     public static void stopAllPlayback() {
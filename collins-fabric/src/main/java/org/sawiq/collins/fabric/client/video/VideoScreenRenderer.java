@@ -1,6 +1,7 @@
 package org.sawiq.collins.fabric.client.video;
 
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.Frustum;
 import net.minecraft.client.render.LightmapTextureManager;
 import net.minecraft.client.render.OverlayTexture;
 import net.minecraft.client.render.RenderLayer;
@@ -8,7 +9,9 @@ import net.minecraft.client.render.VertexConsumer;
 import net.minecraft.client.render.VertexConsumerProvider;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.math.Box;
 import net.minecraft.util.math.Vec3d;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.sawiq.collins.fabric.client.config.CollinsClientConfig;
 import org.sawiq.collins.fabric.client.state.ScreenState;
@@ -20,6 +23,14 @@ public final class VideoScreenRenderer {
     private VideoScreenRenderer() {}
     
     public static void render(MatrixStack matrices, float tickDelta) {
+        render(matrices, tickDelta, null, null);
+    }
+
+    /**
+     * positionMatrix/projectionMatrix — матрицы кадра мира для отсечения по frustum;
+     * null — отсечение выключено (все экраны считаются видимыми).
+     */
+    public static void render(MatrixStack matrices, float tickDelta, Matrix4f positionMatrix, Matrix4f projectionMatrix) {
         if (matrices == null) return;
 
         MinecraftClient client = MinecraftClient.getInstance();
@@ -39,8 +50,29 @@ public final class VideoScreenRenderer {
             return;
         }
 
+        Frustum frustum = null;
+        if (positionMatrix != null && projectionMatrix != null) {
+            frustum = new Frustum(positionMatrix, projectionMatrix);
+            frustum.setPosition(cam.x, cam.y, cam.z);
+        }
+
+        // 1) видимость: невидимые экраны не заливают текстуру (кадры только пропускаются);
+        //    ведущий общего декодера виден, если виден хоть один экран группы
+        for (VideoScreen screen : VideoScreenManager.all()) {
+            screen.beginVisibilityFrame();
+        }
+        for (VideoScreen screen : VideoScreenManager.all()) {
+            boolean visible = frustum == null || isVisible(frustum, screen.state());
+            screen.setQuadVisible(visible);
+            if (!visible) continue;
+            VideoScreen leader = screen.shareLeader();
+            (leader != null ? leader : screen).markVisible();
+        }
+
+        // 2) заливка и отрисовка
         for (VideoScreen screen : VideoScreenManager.all()) {
             screen.renderPlayback();
+            if (!screen.isQuadVisible()) continue;
             if (!screen.hasTexture()) continue;
             drawScreen(entry, consumers, cam, screen.state(), screen.textureId());
         }
@@ -49,6 +81,13 @@ public final class VideoScreenRenderer {
         consumers.draw();
     }
 
+    private static boolean isVisible(Frustum frustum, ScreenState s) {
+        if (s == null) return false;
+        // плоскость рисуется чуть снаружи блоков — берём коробку с запасом
+        Box box = new Box(s.minX(), s.minY(), s.minZ(), s.maxX() + 1, s.maxY() + 1, s.maxZ() + 1).expand(0.1);
+        return frustum.isVisible(box);
+    }
+
     private static void drawScreen(MatrixStack.Entry entry,
                                    VertexConsumerProvider consumers,
                                    Vec3d cam,
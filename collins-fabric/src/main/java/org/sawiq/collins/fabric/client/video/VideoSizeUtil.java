@@ -34,5 +34,17 @@ public final class VideoSizeUtil {
         return new Size(w, h);
     }
 
+    // То же, что pick, но высота не больше maxH (ступень LOD); maxH <= 0 — без ограничения.
+    // Аспект сохраняется, размеры чётные (swscale/yuv420 так стабильнее).
+    public static Size pickForHeight(int blocksW, int blocksH, int videoW, int videoH, int maxH) {
+        Size base = pick(blocksW, blocksH, videoW, videoH);
+        if (maxH <= 0 || base.h() <= maxH) return base;
+
+        double k = (double) maxH / (double) base.h();
+        int w = Math.max(2, (int) Math.round(base.w() * k) & ~1);
+        int h = Math.max(2, maxH & ~1);
+        return new Size(w, h);
+    }
+
     public record Size(int w, int h) {}
 }
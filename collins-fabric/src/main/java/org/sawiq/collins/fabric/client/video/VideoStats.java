@@ -0,0 +1,106 @@
+package org.sawiq.collins.fabric.client.video;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Счётчики производительности видео для /collinsc stats.
+ * Пишутся из render thread и потоков декодера, поэтому методы синхронизированы (конкуренции почти нет).
+ */
+public final class VideoStats {
+
+    private VideoStats() {}
+
+    /** Время этапа в микросекундах: count / avg / max с момента последнего сброса. */
+    public static final class Timer {
+        private final String name;
+        private long count;
+        private long totalUs;
+        private long maxUs;
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        public synchronized void record(long us) {
+            if (us < 0) return;
+            count++;
+            totalUs += us;
+            if (us > maxUs) maxUs = us;
+        }
+
+        public synchronized void reset() {
+            count = 0;
+            totalUs = 0;
+            maxUs = 0;
+        }
+
+        public synchronized String format() {
+            if (count == 0) return name + ": -";
+            return name + ": n=" + count + " avg=" + (totalUs / count) + "us max=" + maxUs + "us";
+        }
+    }
+
+    /** Простой счётчик событий. */
+    public static final class Counter {
+        private final String name;
+        private long value;
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public synchronized void increment() {
+            value++;
+        }
+
+        public synchronized void reset() {
+            value = 0;
+        }
+
+        public synchronized String format() {
+            return name + ": " + value;
+        }
+    }
+
+    // заливка кадра в текстуру (memcpy + upload), render thread
+    public static final Timer UPLOAD_PBO = new Timer("upload pbo");
+    public static final Timer UPLOAD_SYNC = new Timer("upload sync");
+
+    // открытие граббера (start: probe, moov) и время до первого кадра от начала playOnce
+    public static final Timer GRABBER_OPEN = new Timer("grabber open");
+    public static final Timer FIRST_FRAME = new Timer("first frame");
+
+    // стадии декода (см. DecodePipeline): grab (demux + decode + swscale), BGR24 -> ABGR, PCM + запись в линию
+    public static final Timer DECODE_STAGE = new Timer("decode stage");
+    public static final Timer CONVERT_STAGE = new Timer("convert stage");
+    public static final Timer AUDIO_STAGE = new Timer("audio stage");
+
+    // перемотка при входе в идущий сеанс: seek на ключевой кадр + догон до цели
+    public static final Timer SEEK = new Timer("seek");
+
+    // чтение FFmpeg, ждавшее недокачанный блок прогрессивного кэша
+    public static final Timer PROGRESSIVE_STALL = new Timer("progressive stall");
+
+    // кадры, пропущенные без заливки: экран вне поля зрения
+    public static final Counter CULLED_FRAMES = new Counter("culled frames");
+
+    private static final Timer[] ALL = { UPLOAD_PBO, UPLOAD_SYNC, GRABBER_OPEN, FIRST_FRAME, SEEK, DECODE_STAGE, CONVERT_STAGE, AUDIO_STAGE,
+            PROGRESSIVE_STALL };
+    private static final Counter[] COUNTERS = { CULLED_FRAMES };
+
+    public static List<String> lines() {
+        List<String> out = new ArrayList<>(ALL.length + COUNTERS.length + 1);
+        for (Timer t : ALL) out.add(t.format());
+        for (Counter c : COUNTERS) out.add(c.format());
+        // один замер при старте клиента, reset() его не трогает
+        long warm = FFmpegWarmup.warmupMs();
+        out.add("ffmpeg warmup: " + (warm >= 0 ? warm + " ms" : "-"));
+        return out;
+    }
+
+    public static void reset() {
+        for (Timer t : ALL) t.reset();
+        for (Counter c : COUNTERS) c.reset();
+    }
+}
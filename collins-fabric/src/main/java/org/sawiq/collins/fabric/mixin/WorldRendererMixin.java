@@ -25,6 +25,6 @@ public class WorldRendererMixin {
         matrices.multiplyPositionMatrix(positionMatrix);
 
         float tickDelta = tickCounter.getTickProgress(false);
-        VideoScreenRenderer.render(matrices, tickDelta);
+        VideoScreenRenderer.render(matrices, tickDelta, positionMatrix, projectionMatrix);
     }
 }
\ No newline at end of file
@@ -5,16 +5,50 @@ import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
 
-public record CollinsMainS2CPayload(byte[] data) implements CustomPayload {
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Function;
+
+/**
+ * data — сырые байты (когда разборщик не задан); decoded — результат разборщика клиента,
+ * выполненного прямо на сетевом потоке по буферу пакета.
+ */
+public record CollinsMainS2CPayload(byte[] data, Object decoded) implements CustomPayload {
 
     public static final CustomPayload.Id<CollinsMainS2CPayload> ID =
             new CustomPayload.Id<>(Identifier.of("collins", "main"));
 
+    // ставит клиент; на сервере null — только байты
+    private static volatile Function<ByteBuffer, Object> decoder;
+
+    public CollinsMainS2CPayload(byte[] data) {
+        this(data, null);
+    }
+
+    public static void setDecoder(Function<ByteBuffer, Object> d) {
+        decoder = d;
+    }
+
     // ВАЖНО: не используем readByteArray()/writeByteArray() из-за лимитов, читаем "весь остаток"
     public static final PacketCodec<RegistryByteBuf, CollinsMainS2CPayload> CODEC = new PacketCodec<>() {
         @Override
         public CollinsMainS2CPayload decode(RegistryByteBuf buf) {
             int readable = buf.readableBytes();
+
+            Function<ByteBuffer, Object> d = decoder;
+            if (d != null) {
+                // разбор по памяти пакета без копии в byte[]; буфер живёт только до конца decode
+                ByteBuffer view = buf.nioBuffer(buf.readerIndex(), readable).order(ByteOrder.BIG_ENDIAN);
+                Object decoded = null;
+                try {
+                    decoded = d.apply(view);
+                } catch (Throwable ignored) {
+                    // битый пакет не должен рвать соединение
+                }
+                buf.skipBytes(readable);
+                return new CollinsMainS2CPayload(null, decoded);
+            }
+
             byte[] bytes = new byte[readable];
             buf.readBytes(bytes);
             return new CollinsMainS2CPayload(bytes);
@@ -22,7 +56,7 @@ public record CollinsMainS2CPayload(byte[] data) implements CustomPayload {
 
         @Override
         public void encode(RegistryByteBuf buf, CollinsMainS2CPayload payload) {
-            buf.writeBytes(payload.data());
+            if (payload.data() != null) buf.writeBytes(payload.data());
         }
     };
 
@@ -0,0 +1,120 @@
+package org.sawiq.collins.fabric.client.net;
+
+import org.sawiq.collins.paper.model.Screen;
+import org.sawiq.collins.paper.net.SyncEncoder;
+import org.sawiq.collins.paper.state.CollinsRuntimeState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Размер и скорость снапшота v3 (compact, с deflate и без) против полного синка v2 (DataOutputStream, как было
+ * в плагине до v3). Не тест — запускается вручную: ./gradlew :collins-fabric:syncBenchmark (или main из IDE);
+ * по строке на число экранов — байты пакета, кодирование и разбор клиентом (SyncDecoder) в пакетах/с.
+ */
+public final class SyncCodecBenchmark {
+
+    private static final long NOW = 1_760_000_000_123L;
+    private static final int[] SCREENS = {1, 10, 100, 1000};
+    private static final long WARMUP_MS = 500L;
+    private static final long MEASURE_MS = 1000L;
+
+    private static long sink;
+
+    private SyncCodecBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf(Locale.ROOT, "%-7s %-12s %9s %14s %14s%n", "screens", "codec", "bytes", "encode/s", "decode/s");
+        for (int n : SCREENS) {
+            CollinsRuntimeState rt = SyncCodecTest.runtime(0.8f, 100);
+            List<Screen> screens = SyncCodecTest.manyScreens(rt, n);
+            SyncEncoder enc = new SyncEncoder(rt);
+
+            byte[] v2 = encodeV2(rt, screens);
+            byte[] v3 = enc.snapshot(1L, NOW, screens, false);
+            byte[] v3z = enc.snapshot(1L, NOW, screens, true);
+
+            row(n, "v2", v2, () -> encodeV2(rt, screens));
+            row(n, "v3", v3, () -> enc.snapshot(1L, NOW, screens, false));
+            row(n, "v3+deflate", v3z, () -> enc.snapshot(1L, NOW, screens, true));
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    private interface Encode {
+        byte[] run() throws Exception;
+    }
+
+    private static void row(int n, String codec, byte[] packet, Encode encode) throws Exception {
+        double enc = rate(() -> sink += encode.run().length);
+        double dec = rate(() -> {
+            SyncDecoder.Update u = SyncDecoder.decode(ByteBuffer.wrap(packet));
+            if (!(u instanceof SyncDecoder.Full full) || full.screens().size() != n) {
+                throw new IllegalStateException(codec + " decode failed");
+            }
+            sink += full.screens().size();
+        });
+        System.out.printf(Locale.ROOT, "%-7d %-12s %9d %14.0f %14.0f%n", n, codec, packet.length, enc, dec);
+    }
+
+    private interface Op {
+        void run() throws Exception;
+    }
+
+    // операций в секунду: прогрев, затем пачки по 16 до MEASURE_MS
+    private static double rate(Op op) throws Exception {
+        long end = System.nanoTime() + WARMUP_MS * 1_000_000L;
+        while (System.nanoTime() < end) op.run();
+
+        long ops = 0;
+        long start = System.nanoTime();
+        end = start + MEASURE_MS * 1_000_000L;
+        long now;
+        do {
+            for (int i = 0; i < 16; i++) op.run();
+            ops += 16;
+            now = System.nanoTime();
+        } while (now < end);
+        return ops * 1e9 / (now - start);
+    }
+
+    /** Полный синк v2 — как его собирал плагин до v3. */
+    private static byte[] encodeV2(CollinsRuntimeState rt, List<Screen> screens) throws IOException {
+        ByteArrayOutputStream innerBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(innerBytes);
+        out.writeByte(SyncDecoder.MSG_SYNC);
+        out.writeInt(2);
+        out.writeFloat(rt.globalVolume());
+        out.writeInt(rt.hearRadius());
+        out.writeLong(NOW);
+        out.writeInt(screens.size());
+        for (Screen s : screens) {
+            out.writeUTF(s.name());
+            out.writeUTF(s.world());
+            out.writeInt(s.x1()); out.writeInt(s.y1()); out.writeInt(s.z1());
+            out.writeInt(s.x2()); out.writeInt(s.y2()); out.writeInt(s.z2());
+            out.writeByte(s.axis());
+            out.writeUTF(s.mp4Url() == null ? "" : s.mp4Url());
+            out.writeBoolean(s.playing());
+            out.writeBoolean(s.loop());
+            out.writeFloat(s.volume());
+            CollinsRuntimeState.Playback pb = rt.get(s.name());
+            out.writeLong(pb.startEpochMs());
+            out.writeLong(pb.basePosMs());
+        }
+        out.flush();
+        byte[] inner = innerBytes.toByteArray();
+
+        ByteArrayOutputStream wrapped = new ByteArrayOutputStream(inner.length + 8);
+        DataOutputStream w = new DataOutputStream(wrapped);
+        w.write("COLL".getBytes(StandardCharsets.US_ASCII));
+        w.writeInt(inner.length);
+        w.write(inner);
+        return wrapped.toByteArray();
+    }
+}
@@ -0,0 +1,206 @@
+package org.sawiq.collins.fabric.client.net;
+
+import org.junit.jupiter.api.Test;
+import org.sawiq.collins.fabric.client.state.ScreenState;
+import org.sawiq.collins.paper.model.Screen;
+import org.sawiq.collins.paper.net.SyncEncoder;
+import org.sawiq.collins.paper.state.CollinsRuntimeState;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Пакеты v3 плагина ({@link SyncEncoder} + CompactWriter) разбираются клиентом ({@link SyncDecoder}) без потерь:
+ * все типы сообщений, снапшот со сжатием и без, отрицательные координаты и разницы.
+ */
+class SyncCodecTest {
+
+    // COLL(4) + len(4) + msg(1) + version(4) + revision(8) + serverNowMs(8)
+    private static final int FLAGS_OFFSET = 29;
+
+    private static final long NOW = 1_760_000_000_123L;
+
+    @Test
+    void snapshotWithoutDeflate() {
+        CollinsRuntimeState rt = runtime(0.35f, 512);
+        List<Screen> screens = List.of(
+                new Screen("Lobby", "world", -120, 64, -7, -100, 80, -7, (byte) 0,
+                        "https://cdn.example.com/videos/intro.mp4", true, false, 0.8f),
+                // x2 < x1, z2 < z1: отрицательные разницы; url без '/' — пустой префикс
+                new Screen("Арена", "world_nether", 30_000_000, -64, 5, 29_999_990, -60, -5, (byte) 2,
+                        "clip.webm", false, true, 1.0f),
+                new Screen("empty", "world", 0, 0, 0, 0, 0, 0, (byte) 1, null, false, false, 0.0f)
+        );
+        timer(rt, "Lobby", NOW - 12_345L, 67_890L);
+        timer(rt, "Арена", 0L, Long.MAX_VALUE >>> 2);
+
+        byte[] packet = new SyncEncoder(rt).snapshot(42L, NOW, screens, true);
+        assertEquals(0, packet[FLAGS_OFFSET], "small snapshot must not be deflated");
+
+        SyncDecoder.Full full = assertInstanceOf(SyncDecoder.Full.class, decode(packet));
+        assertEquals(3, full.version());
+        assertEquals(42L, full.revision());
+        assertEquals(NOW, full.serverNowMs());
+        assertEquals(0.35f, full.globalVolume());
+        assertEquals(512, full.hearRadius());
+        assertEquals(screens.size(), full.screens().size());
+        for (Screen s : screens) {
+            assertScreen(rt, s, full.screens().get(s.name().toLowerCase()));
+        }
+    }
+
+    @Test
+    void snapshotWithDeflate() {
+        CollinsRuntimeState rt = runtime(1.0f, 100);
+        List<Screen> screens = manyScreens(rt, 300);
+
+        byte[] deflated = new SyncEncoder(rt).snapshot(7L, NOW, screens, true);
+        byte[] raw = new SyncEncoder(rt).snapshot(7L, NOW, screens, false);
+        assertEquals(1, deflated[FLAGS_OFFSET] & 1, "large snapshot should be deflated");
+        assertEquals(0, raw[FLAGS_OFFSET]);
+        assertTrue(deflated.length < raw.length, "deflate " + deflated.length + " >= raw " + raw.length);
+
+        for (byte[] packet : List.of(deflated, raw)) {
+            SyncDecoder.Full full = assertInstanceOf(SyncDecoder.Full.class, decode(packet));
+            assertEquals(7L, full.revision());
+            assertEquals(screens.size(), full.screens().size());
+            for (Screen s : screens) {
+                assertScreen(rt, s, full.screens().get(s.name().toLowerCase()));
+            }
+        }
+    }
+
+    @Test
+    void emptySnapshot() {
+        CollinsRuntimeState rt = runtime(0.5f, 0);
+        SyncDecoder.Full full = assertInstanceOf(SyncDecoder.Full.class,
+                decode(new SyncEncoder(rt).snapshot(0L, NOW, List.of(), true)));
+        assertEquals(0, full.screens().size());
+        assertEquals(0, full.hearRadius());
+    }
+
+    @Test
+    void upsert() {
+        CollinsRuntimeState rt = runtime(1.0f, 100);
+        Screen s = new Screen("Big-Screen", "world_the_end", -1, -2_000_000, Integer.MIN_VALUE / 2,
+                Integer.MAX_VALUE / 2, 2_000_000, -1, (byte) 1,
+                "http://host:8080/a/b/c/movie%20name.mkv?x=1/2", true, true, 0.25f);
+        timer(rt, s.name(), NOW, 0L);
+
+        SyncDecoder.Upsert u = assertInstanceOf(SyncDecoder.Upsert.class, decode(new SyncEncoder(rt).upsert(43L, NOW + 1, s)));
+        assertEquals(43L, u.revision());
+        assertEquals(NOW + 1, u.serverNowMs());
+        assertEquals("big-screen", u.key());
+        assertScreen(rt, s, u.state());
+    }
+
+    @Test
+    void remove() {
+        SyncDecoder.Remove r = assertInstanceOf(SyncDecoder.Remove.class,
+                decode(new SyncEncoder(runtime(1.0f, 100)).remove(44L, NOW + 2, "Old Screen")));
+        assertEquals(44L, r.revision());
+        assertEquals(NOW + 2, r.serverNowMs());
+        assertEquals("old screen", r.key());
+    }
+
+    @Test
+    void playback() {
+        CollinsRuntimeState rt = runtime(1.0f, 100);
+        Screen s = new Screen("Cinema", "world", 1, 2, 3, 4, 5, 6, (byte) 0, "https://x/y.mp4", false, true, 0.6f);
+        timer(rt, s.name(), NOW - 1L, 3_600_000L);
+
+        SyncDecoder.Playback p = assertInstanceOf(SyncDecoder.Playback.class,
+                decode(new SyncEncoder(rt).playback(45L, NOW + 3, s)));
+        assertEquals(45L, p.revision());
+        assertEquals(NOW + 3, p.serverNowMs());
+        assertEquals("cinema", p.key());
+        assertFalse(p.playing());
+        assertTrue(p.loop());
+        assertEquals(0.6f, p.volume());
+        assertEquals(NOW - 1L, p.startEpochMs());
+        assertEquals(3_600_000L, p.basePosMs());
+    }
+
+    @Test
+    void globals() {
+        SyncDecoder.Globals g = assertInstanceOf(SyncDecoder.Globals.class,
+                decode(new SyncEncoder(runtime(0.05f, 512)).globals(46L, NOW + 4)));
+        assertEquals(46L, g.revision());
+        assertEquals(NOW + 4, g.serverNowMs());
+        assertEquals(0.05f, g.globalVolume());
+        assertEquals(512, g.hearRadius());
+    }
+
+    @Test
+    void truncatedPacketIsRejected() {
+        CollinsRuntimeState rt = runtime(1.0f, 100);
+        byte[] packet = new SyncEncoder(rt).snapshot(1L, NOW, manyScreens(rt, 3), true);
+        for (int cut = 0; cut < packet.length; cut += 7) {
+            byte[] part = Arrays.copyOf(packet, cut);
+            assertNull(SyncDecoder.decode(ByteBuffer.wrap(part)), "cut=" + cut);
+        }
+    }
+
+    // ==================== helpers ====================
+
+    static CollinsRuntimeState runtime(float globalVolume, int hearRadius) {
+        CollinsRuntimeState rt = new CollinsRuntimeState();
+        rt.setGlobalVolume(globalVolume);
+        rt.setHearRadius(hearRadius);
+        return rt;
+    }
+
+    static void timer(CollinsRuntimeState rt, String screen, long startEpochMs, long basePosMs) {
+        rt.get(screen).set(startEpochMs, basePosMs);
+    }
+
+    /** Похожие экраны одного сервера: пара миров, общий хост url, координаты по обе стороны от нуля. */
+    static List<Screen> manyScreens(CollinsRuntimeState rt, int n) {
+        List<Screen> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int x = (i * 37 % 2000) - 1000;
+            int z = (i * 53 % 3000) - 1500;
+            Screen s = new Screen("screen_" + i, i % 3 == 0 ? "world_nether" : "world",
+                    x, 60 + i % 40, z, x + 8 - i % 17, 64 + i % 40, z - i % 5, (byte) (i % 3),
+                    "https://media.example.net/collins/videos/" + i + ".mp4", i % 2 == 0, i % 5 == 0, (i % 10) / 10f);
+            if (i % 2 == 0) timer(rt, s.name(), NOW - i * 1000L, i * 250L);
+            out.add(s);
+        }
+        return out;
+    }
+
+    private static SyncDecoder.Update decode(byte[] packet) {
+        SyncDecoder.Update u = SyncDecoder.decode(ByteBuffer.wrap(packet));
+        assertNotNull(u, "decode failed");
+        return u;
+    }
+
+    private static void assertScreen(CollinsRuntimeState rt, Screen s, ScreenState st) {
+        assertNotNull(st, s.name());
+        assertEquals(s.name(), st.name());
+        assertEquals(s.world(), st.world());
+        assertEquals(s.x1(), st.x1());
+        assertEquals(s.y1(), st.y1());
+        assertEquals(s.z1(), st.z1());
+        assertEquals(s.x2(), st.x2());
+        assertEquals(s.y2(), st.y2());
+        assertEquals(s.z2(), st.z2());
+        assertEquals(s.axis(), st.axis());
+        assertEquals(s.mp4Url() == null ? "" : s.mp4Url(), st.url());
+        assertEquals(s.playing(), st.playing());
+        assertEquals(s.loop(), st.loop());
+        assertEquals(s.volume(), st.volume());
+        CollinsRuntimeState.Playback pb = rt.get(s.name());
+        assertEquals(pb.startEpochMs(), st.startEpochMs());
+        assertEquals(pb.basePosMs(), st.basePosMs());
+    }
+}
@@ -0,0 +1,109 @@
+package org.sawiq.collins.fabric.client.video;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Журнал {@link MediaIndex} после обрыва записи: битый хвост обрезается при загрузке,
+ * и всё, что дописано после, читается при следующей загрузке.
+ */
+class MediaIndexTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = Files.createTempDirectory("collins-index");
+        MediaIndex.useDir(dir);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        MediaIndex.useDir(null);
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    void appendAfterTornTailSurvivesReload() throws Exception {
+        putMeta("a");
+        putMeta("b");
+        putMeta("c");
+        Path f = dir.resolve(MediaIndex.FILE_NAME);
+
+        // запись "c" оборвалась на середине
+        try (RandomAccessFile raf = new RandomAccessFile(f.toFile(), "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        MediaIndex.useDir(dir);
+        assertNotNull(MediaIndex.get("a"));
+        assertNotNull(MediaIndex.get("b"));
+        assertNull(MediaIndex.get("c"), "torn record must not be read");
+
+        putMeta("d");
+        MediaIndex.touch("a");
+
+        MediaIndex.useDir(dir);
+        assertNotNull(MediaIndex.get("a"));
+        assertNotNull(MediaIndex.get("b"));
+        assertNull(MediaIndex.get("c"));
+        MediaIndex.Entry d = MediaIndex.get("d");
+        assertNotNull(d, "record appended after the torn tail was lost");
+        assertEquals(1280, d.videoW());
+        assertEquals("https://cdn.example.com/d.mp4", d.resolvedUrl());
+    }
+
+    @Test
+    void appendAfterCorruptRecordSurvivesReload() throws Exception {
+        putMeta("a");
+        Path f = dir.resolve(MediaIndex.FILE_NAME);
+        long goodEnd = Files.size(f);
+        putMeta("b");
+
+        // портим байт внутри payload записи "b": crc не сойдётся
+        try (RandomAccessFile raf = new RandomAccessFile(f.toFile(), "rw")) {
+            raf.seek(goodEnd + 8);
+            int v = raf.read();
+            raf.seek(goodEnd + 8);
+            raf.write(v ^ 0x5A);
+        }
+
+        MediaIndex.useDir(dir);
+        assertNotNull(MediaIndex.get("a"));
+        assertNull(MediaIndex.get("b"));
+        assertEquals(goodEnd, Files.size(f), "bad tail must be truncated");
+
+        putMeta("c");
+        MediaIndex.useDir(dir);
+        assertNotNull(MediaIndex.get("a"));
+        assertNotNull(MediaIndex.get("c"), "record appended after the corrupt one was lost");
+    }
+
+    @Test
+    void truncatedHeaderRebuildsJournal() throws Exception {
+        Files.write(dir.resolve(MediaIndex.FILE_NAME), new byte[]{0x43, 0x4D});
+
+        MediaIndex.useDir(dir);
+        putMeta("a");
+
+        MediaIndex.useDir(dir);
+        assertNotNull(MediaIndex.get("a"));
+    }
+
+    private static void putMeta(String key) {
+        MediaIndex.putMeta(key, "https://cdn.example.com/" + key + ".mp4", false, 1280, 720, 30.0, 60_000L);
+    }
+}
@@ -0,0 +1,103 @@
+package org.sawiq.collins.fabric.client.video;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Конвертер BGR24 -> ABGR против попиксельного эталона: padding строк, обрезанная последняя строка,
+ * повторное использование временного массива.
+ */
+class PixelKernelTest {
+
+    // одиночные пиксели, нечётные ширины, широкие строки
+    private static final int[][] SIZES = {
+            {1, 1}, {2, 1}, {3, 1}, {5, 2}, {7, 3}, {15, 4}, {16, 1}, {17, 3},
+            {31, 2}, {33, 5}, {37, 5}, {61, 9}, {63, 7}, {65, 3}, {127, 2}, {129, 3},
+            {640, 2}, {641, 3}, {1279, 2}, {1921, 3}
+    };
+    // 0 — без padding (stride не передаётся), остальное — байты padding в конце строки
+    private static final int[] PADS = {0, 1, 3, 5, 32, 61};
+
+    @Test
+    void scalarMatchesReference() {
+        PixelKernel k = new ScalarPixelKernel();
+        for (int[] sz : SIZES) {
+            for (int pad : PADS) {
+                for (boolean direct : new boolean[]{false, true}) {
+                    int w = sz[0], h = sz[1];
+                    int stride = w * 3 + pad;
+                    ByteBuffer src = frame(stride * h, direct, w * 31 + h * 7 + pad);
+                    ByteBuffer dst = out(w, h);
+
+                    k.bgr24ToAbgr(src, pad == 0 ? 0 : stride, w, h, dst);
+                    assertMatchesReference(src, stride, w, h, dst, where(w, h, pad, direct));
+                }
+            }
+        }
+    }
+
+    @Test
+    void scalarOnTruncatedLastRow() {
+        // у последней строки padding не выделен (так бывает у кадров FFmpeg)
+        PixelKernel k = new ScalarPixelKernel();
+        for (int[] sz : SIZES) {
+            int w = sz[0], h = sz[1];
+            int stride = w * 3 + 32;
+            ByteBuffer src = frame(stride * (h - 1) + w * 3, true, w + h);
+            ByteBuffer dst = out(w, h);
+            k.bgr24ToAbgr(src, stride, w, h, dst);
+            assertMatchesReference(src, stride, w, h, dst, where(w, h, 32, true) + " truncated");
+        }
+    }
+
+    @Test
+    void kernelReusedAcrossSizes() {
+        // временный массив одного экземпляра растёт и переиспользуется: большой кадр, затем маленький
+        PixelKernel k = new ScalarPixelKernel();
+        int[][] order = {{1921, 3}, {7, 3}, {641, 3}, {1, 1}, {129, 3}};
+        for (int[] sz : order) {
+            int w = sz[0], h = sz[1];
+            ByteBuffer src = frame(w * 3 * h, true, w ^ h);
+            ByteBuffer dst = out(w, h);
+            k.bgr24ToAbgr(src, 0, w, h, dst);
+            assertMatchesReference(src, w * 3, w, h, dst, where(w, h, 0, true) + " reuse");
+        }
+    }
+
+    private static void assertMatchesReference(ByteBuffer src, int stride, int w, int h, ByteBuffer dst, String where) {
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int s = y * stride + x * 3;
+                int b = src.get(s) & 0xFF, g = src.get(s + 1) & 0xFF, r = src.get(s + 2) & 0xFF;
+                int expected = 0xFF000000 | (b << 16) | (g << 8) | r;
+                int got = dst.getInt((y * w + x) * 4);
+                if (got != expected) {
+                    assertEquals(expected, got, where + " px=" + x + "," + y);
+                }
+            }
+        }
+    }
+
+    // псевдослучайные байты (xorshift), включая 0x00/0xFF и старший бит
+    private static ByteBuffer frame(int len, boolean direct, int seed) {
+        ByteBuffer src = direct ? ByteBuffer.allocateDirect(len) : ByteBuffer.allocate(len);
+        int s = seed * 0x9E3779B9 | 1;
+        for (int i = 0; i < len; i++) {
+            s ^= s << 13; s ^= s >>> 17; s ^= s << 5;
+            src.put(i, (byte) s);
+        }
+        return src;
+    }
+
+    private static ByteBuffer out(int w, int h) {
+        return ByteBuffer.allocateDirect(w * h * 4).order(ByteOrder.nativeOrder());
+    }
+
+    private static String where(int w, int h, int pad, boolean direct) {
+        return w + "x" + h + " pad=" + pad + (direct ? " direct" : " heap");
+    }
+}
@@ -3,7 +3,13 @@ package org.sawiq.collins.paper;
 import org.bukkit.Bukkit;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.sawiq.collins.paper.command.CollinsCommand;
 import org.sawiq.collins.paper.net.CollinsMessenger;
@@ -63,4 +69,34 @@ public final class CollinsPaperPlugin extends JavaPlugin implements Listener {
         // через 1 секунду после входа (как у тебя было)
         Bukkit.getScheduler().runTaskLater(this, () -> messenger.sendSync(e.getPlayer()), 20L);
     }
+
+    @EventHandler
+    public void onChangedWorld(PlayerChangedWorldEvent e) {
+        // экраны другого мира клиенту не нужны — снапшот под новый мир
+        messenger.onWorldChanged(e.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent e) {
+        // внутри чанка регион не меняется
+        if ((e.getFrom().getBlockX() >> 4) == (e.getTo().getBlockX() >> 4)
+                && (e.getFrom().getBlockZ() >> 4) == (e.getTo().getBlockZ() >> 4)) return;
+        messenger.onMove(e.getPlayer(), e.getTo());
+    }
+
+    // у телепорта свой HandlerList — onMove его не получает; в другой мир — через onChangedWorld
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent e) {
+        messenger.onMove(e.getPlayer(), e.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent e) {
+        messenger.onMove(e.getPlayer(), e.getRespawnLocation());
+    }
+
+    @EventHandler
+    public void onQuit(PlayerQuitEvent e) {
+        messenger.forget(e.getPlayer());
+    }
 }
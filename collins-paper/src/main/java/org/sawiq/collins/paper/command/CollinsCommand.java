@@ -139,7 +139,7 @@ public final class CollinsCommand implements TabExecutor {
 
                 runtime.resetPlayback(screen.name()); // чтобы новый экран не унаследовал таймер
 
-                messenger.requestBroadcastSync();
+                messenger.broadcastUpsert(screen);
                 SelectionVisualizer.stop(p);
 
                 lang.send(p, "cmd.screen.created", lang.vars("name", name));
@@ -175,17 +175,16 @@ public final class CollinsCommand implements TabExecutor {
                 );
 
                 // Смена url => сброс таймера, иначе будет seek в старую позицию другого файла
-                runtime.resetPlayback(s.name());
                 if (updated.playing()) {
-                    CollinsRuntimeState.Playback pb = runtime.get(s.name());
-                    pb.startEpochMs = System.currentTimeMillis();
-                    pb.basePosMs = 0;
+                    runtime.get(s.name()).set(System.currentTimeMillis(), 0);
+                } else {
+                    runtime.resetPlayback(s.name());
                 }
 
                 store.put(updated);
                 store.save();
 
-                messenger.requestBroadcastSync();
+                messenger.broadcastUpsert(updated);
                 SelectionVisualizer.stop(p);
 
                 lang.send(p, "cmd.url.set", lang.vars("name", name));
@@ -201,9 +200,7 @@ public final class CollinsCommand implements TabExecutor {
                 if (s == null) { lang.send(p, "error.screen_not_found", lang.vars("name", name)); return true; }
 
                 // play = старт с нуля
-                CollinsRuntimeState.Playback pb = runtime.get(s.name());
-                pb.basePosMs = 0;
-                pb.startEpochMs = System.currentTimeMillis();
+                runtime.get(s.name()).set(System.currentTimeMillis(), 0);
 
                 Screen updated = new Screen(
                         s.name(), s.world(),
@@ -218,7 +215,7 @@ public final class CollinsCommand implements TabExecutor {
 
                 store.put(updated);
                 store.save();
-                messenger.requestBroadcastSync();
+                messenger.broadcastPlayback(updated);
                 SelectionVisualizer.stop(p);
 
                 lang.send(p, "cmd.playing", lang.vars("name", name));
@@ -249,7 +246,7 @@ public final class CollinsCommand implements TabExecutor {
 
                 store.put(updated);
                 store.save();
-                messenger.requestBroadcastSync();
+                messenger.broadcastPlayback(updated);
                 SelectionVisualizer.stop(p);
 
                 lang.send(p, "cmd.stopped", lang.vars("name", name));
@@ -267,10 +264,11 @@ public final class CollinsCommand implements TabExecutor {
                 // pause = выключить, но сохранить позицию
                 long now = System.currentTimeMillis();
                 CollinsRuntimeState.Playback pb = runtime.get(s.name());
-                if (s.playing() && pb.startEpochMs > 0) {
-                    pb.basePosMs += Math.max(0, now - pb.startEpochMs);
+                long posMs = pb.basePosMs();
+                if (s.playing() && pb.startEpochMs() > 0) {
+                    posMs += Math.max(0, now - pb.startEpochMs());
                 }
-                pb.startEpochMs = 0;
+                pb.set(0, posMs);
 
                 Screen updated = new Screen(
                         s.name(), s.world(),
@@ -285,7 +283,7 @@ public final class CollinsCommand implements TabExecutor {
 
                 store.put(updated);
                 store.save();
-                messenger.requestBroadcastSync();
+                messenger.broadcastPlayback(updated);
                 SelectionVisualizer.stop(p);
 
                 lang.send(p, "cmd.paused", lang.vars("name", name));
@@ -301,7 +299,7 @@ public final class CollinsCommand implements TabExecutor {
                 if (s == null) { lang.send(p, "error.screen_not_found", lang.vars("name", name)); return true; }
 
                 CollinsRuntimeState.Playback pb = runtime.get(s.name());
-                pb.startEpochMs = System.currentTimeMillis();
+                pb.set(System.currentTimeMillis(), pb.basePosMs());
 
                 Screen updated = new Screen(
                         s.name(), s.world(),
@@ -316,7 +314,7 @@ public final class CollinsCommand implements TabExecutor {
 
                 store.put(updated);
                 store.save();
-                messenger.requestBroadcastSync();
+                messenger.broadcastPlayback(updated);
                 SelectionVisualizer.stop(p);
 
                 lang.send(p, "cmd.resumed", lang.vars("name", name));
@@ -347,16 +345,15 @@ public final class CollinsCommand implements TabExecutor {
                 long now = System.currentTimeMillis();
 
                 CollinsRuntimeState.Playback pb = runtime.get(s.name());
-                long curMs = pb.basePosMs;
-                if (s.playing() && pb.startEpochMs > 0) {
-                    curMs += Math.max(0L, now - pb.startEpochMs);
+                long curMs = pb.basePosMs();
+                if (s.playing() && pb.startEpochMs() > 0) {
+                    curMs += Math.max(0L, now - pb.startEpochMs());
                 }
 
                 long nextMs = Math.max(0L, curMs + deltaMs);
-                pb.basePosMs = nextMs;
-                pb.startEpochMs = s.playing() ? now : 0L;
+                pb.set(s.playing() ? now : 0L, nextMs);
 
-                messenger.requestBroadcastSync();
+                messenger.broadcastPlayback(s);
 
                 lang.send(p, "cmd.seeked", lang.vars(
                         "name", s.name(),
@@ -391,16 +388,15 @@ public final class CollinsCommand implements TabExecutor {
                 long now = System.currentTimeMillis();
 
                 CollinsRuntimeState.Playback pb = runtime.get(s.name());
-                long curMs = pb.basePosMs;
-                if (s.playing() && pb.startEpochMs > 0) {
-                    curMs += Math.max(0L, now - pb.startEpochMs);
+                long curMs = pb.basePosMs();
+                if (s.playing() && pb.startEpochMs() > 0) {
+                    curMs += Math.max(0L, now - pb.startEpochMs());
                 }
 
                 long nextMs = Math.max(0L, curMs + deltaMs);
-                pb.basePosMs = nextMs;
-                pb.startEpochMs = s.playing() ? now : 0L;
+                pb.set(s.playing() ? now : 0L, nextMs);
 
-                messenger.requestBroadcastSync();
+                messenger.broadcastPlayback(s);
 
                 lang.send(p, "cmd.seeked", lang.vars(
                         "name", s.name(),
@@ -417,8 +413,8 @@ public final class CollinsCommand implements TabExecutor {
 
                 String act = args[1].toLowerCase(Locale.ROOT);
                 if (act.equals("reset")) {
-                    runtime.globalVolume = 1.0f;
-                    messenger.requestBroadcastSync();
+                    runtime.setGlobalVolume(1.0f);
+                    messenger.broadcastGlobals();
                     lang.send(p, "cmd.global_volume.reset");
                     plugin.getLogger().info(p.getName() + " volume reset");
                     return true;
@@ -431,8 +427,8 @@ public final class CollinsCommand implements TabExecutor {
                     catch (Exception e) { lang.send(p, "error.bad_number"); return true; }
 
                     v = Math.max(0f, Math.min(2f, v));
-                    runtime.globalVolume = v;
-                    messenger.requestBroadcastSync();
+                    runtime.setGlobalVolume(v);
+                    messenger.broadcastGlobals();
                     lang.send(p, "cmd.global_volume.set", lang.vars("value", v));
                     plugin.getLogger().info(p.getName() + " volume set " + v);
                     return true;
@@ -447,8 +443,8 @@ public final class CollinsCommand implements TabExecutor {
 
                 String act = args[1].toLowerCase(Locale.ROOT);
                 if (act.equals("reset")) {
-                    runtime.hearRadius = 100;
-                    messenger.requestBroadcastSync();
+                    runtime.setHearRadius(100);
+                    messenger.broadcastGlobals();
                     lang.send(p, "cmd.hear_radius.reset");
                     plugin.getLogger().info(p.getName() + " radius reset");
                     return true;
@@ -461,8 +457,8 @@ public final class CollinsCommand implements TabExecutor {
                     catch (Exception e) { lang.send(p, "error.bad_number"); return true; }
 
                     r = Math.max(1, Math.min(512, r));
-                    runtime.hearRadius = r;
-                    messenger.requestBroadcastSync();
+                    runtime.setHearRadius(r);
+                    messenger.broadcastGlobals();
                     lang.send(p, "cmd.hear_radius.set", lang.vars("value", r));
                     plugin.getLogger().info(p.getName() + " radius set " + r);
                     return true;
@@ -482,7 +478,7 @@ public final class CollinsCommand implements TabExecutor {
                 store.save();
                 runtime.resetPlayback(removed.name());
 
-                messenger.requestBroadcastSync();
+                messenger.broadcastRemove(removed.name());
                 SelectionVisualizer.stop(p);
 
                 lang.send(p, "cmd.screen.removed", lang.vars("name", name));
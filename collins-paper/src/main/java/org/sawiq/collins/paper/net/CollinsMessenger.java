@@ -1,15 +1,16 @@
 package org.sawiq.collins.paper.net;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.sawiq.collins.paper.model.Screen;
 import org.sawiq.collins.paper.state.CollinsRuntimeState;
 import org.sawiq.collins.paper.store.ScreenStore;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class CollinsMessenger {
 
@@ -17,23 +18,105 @@ public final class CollinsMessenger {
     private final ScreenStore store;
     private final CollinsRuntimeState runtime;
 
+    // все пакеты собираются на главном потоке — один буфер на всех (формат — в SyncEncoder)
+    private final SyncEncoder encoder;
+
+    // v3: растёт на каждое изменение; снапшот несёт текущую, дельта — следующую
+    private final AtomicLong revision = new AtomicLong(0);
+
+    /**
+     * Интерес игрока: мир, регион (квадрат regionChunks x regionChunks чанков) и экраны, которые
+     * ему отправлены. Экран интересен, если задевает регион, расширенный на viewDistance во все
+     * стороны, — так дальность соблюдается из любой точки региона, а пересинк нужен только
+     * при смене региона или мира.
+     */
+    private record Interest(String world, int rx, int rz, int cx0, int cz0, int cx1, int cz1, Set<String> screens) {}
+
+    private final Map<UUID, Interest> interests = new ConcurrentHashMap<>();
+
+    /** Готовый снапшот региона: payload неизменяем, при отправке копируется и получает свежий serverNowMs. */
+    private record Snapshot(long revision, long storeRevision, long runtimeRevision, Interest interest, byte[] payload) {}
+
+    // ключ — мир, регион и настройки интереса; только главный поток
+    private final Map<String, Snapshot> snapshots = new HashMap<>();
+    private static final int MAX_CACHED_SNAPSHOTS = 256;
+
     private volatile boolean broadcastScheduled;
 
+    // дистанция, под которую посчитаны интересы игроков; только главный поток
+    private int interestDistance = -1;
+
     public CollinsMessenger(JavaPlugin plugin, ScreenStore store, CollinsRuntimeState runtime) {
         this.plugin = plugin;
         this.store = store;
         this.runtime = runtime;
+        this.encoder = new SyncEncoder(runtime);
+    }
+
+    // блоки; 0 — все экраны мира игрока. Не меньше радиуса слышимости (до 512): слышно — значит, синкается
+    private int viewDistance() {
+        int vd = Math.max(0, plugin.getConfig().getInt("sync.viewDistance", 256));
+        return vd == 0 ? 0 : Math.max(vd, runtime.hearRadius());
     }
 
+    private int regionChunks() {
+        return Math.max(1, plugin.getConfig().getInt("sync.regionChunks", 4));
+    }
+
+    /** Снапшот экранов, интересных игроку (вход, смена мира или региона). */
     public void sendSync(Player player) {
+        sendSync(player, player.getLocation());
+    }
+
+    // at — куда игрок попадёт: в событиях движения/телепорта/возрождения он ещё на старом месте
+    private void sendSync(Player player, Location at) {
+        if (!player.isOnline()) return; // вышел до отложенного снапшота
         try {
-            byte[] payload = buildWrappedSyncBytes();
+            Snapshot snap = snapshotFor(at);
+            Interest in = snap.interest();
+            interests.put(player.getUniqueId(), new Interest(in.world(), in.rx(), in.rz(),
+                    in.cx0(), in.cz0(), in.cx1(), in.cz1(), new HashSet<>(in.screens())));
+
+            // общий массив не трогаем: он может ещё лежать в очереди отправки другого игрока
+            byte[] payload = snap.payload().clone();
+            CompactWriter.patchServerNow(payload, System.currentTimeMillis());
             player.sendPluginMessage(plugin, "collins:main", payload);
         } catch (Exception e) {
             plugin.getLogger().warning("Failed to send SYNC: " + e.getMessage());
         }
     }
 
+    /**
+     * Снапшот региона из кэша или собранный заново. Действителен, пока не сдвинулись ревизия протокола
+     * (любое опубликованное изменение экранов/таймеров/глобальных настроек), ревизия ScreenStore
+     * и ревизия CollinsRuntimeState — даже если изменение ещё не разослано:
+     * вход и пересинк многих игроков в одном регионе — одна сериализация.
+     */
+    private Snapshot snapshotFor(Location loc) {
+        String world = loc.getWorld() == null ? "" : loc.getWorld().getName();
+        int rc = regionChunks();
+        int vd = viewDistance();
+        interestDistance = vd;
+        int rx = Math.floorDiv(loc.getBlockX() >> 4, rc);
+        int rz = Math.floorDiv(loc.getBlockZ() >> 4, rc);
+        String key = world + '|' + rx + '|' + rz + '|' + rc + '|' + vd;
+
+        long rev = revision.get();
+        long storeRev = store.revision();
+        long runtimeRev = runtime.revision();
+        Snapshot cached = snapshots.get(key);
+        if (cached != null && cached.revision() == rev && cached.storeRevision() == storeRev
+                && cached.runtimeRevision() == runtimeRev) return cached;
+
+        if (cached == null && snapshots.size() >= MAX_CACHED_SNAPSHOTS) snapshots.clear();
+
+        Interest in = computeInterest(world, rx, rz, rc, vd);
+        Snapshot snap = new Snapshot(rev, storeRev, runtimeRev, in, buildSnapshot(in.screens()));
+        snapshots.put(key, snap);
+        return snap;
+    }
+
+    /** Полный снапшот всем — для случаев, когда дельтой не описать. */
     public void broadcastSync() {
         for (Player p : Bukkit.getOnlinePlayers()) {
             sendSync(p);
@@ -49,79 +132,138 @@ public final class CollinsMessenger {
         });
     }
 
-    // WRAP: magic(4) + len(int) + innerBytes
-    private byte[] buildWrappedSyncBytes() throws Exception {
-        byte[] inner = buildSyncInnerBytes();
+    /** Игрок сдвинулся, телепортировался или возродился: вышел из региона — пересинк под новый регион. Дёшево на каждое движение. */
+    public void onMove(Player player, Location to) {
+        Interest in = interests.get(player.getUniqueId());
+        if (in == null || to == null || to.getWorld() == null) return;
+        // смену мира обрабатывает onWorldChanged
+        if (!to.getWorld().getName().equals(in.world())) return;
 
-        var bout = new ByteArrayOutputStream();
-        var out = new DataOutputStream(bout);
+        int rc = regionChunks();
+        int rx = Math.floorDiv(to.getBlockX() >> 4, rc);
+        int rz = Math.floorDiv(to.getBlockZ() >> 4, rc);
+        if (rx == in.rx() && rz == in.rz()) return;
 
-        out.write("COLL".getBytes(StandardCharsets.US_ASCII)); // magic
-        out.writeInt(inner.length);
-        out.write(inner);
-        out.flush();
+        sendSync(player, to);
+    }
 
-        return bout.toByteArray();
+    public void onWorldChanged(Player player) {
+        sendSync(player);
     }
 
-    /**
-     * INNER (v2):
-     * byte msg
-     * int version
-     * float globalVolume
-     * int hearRadius
-     * long serverNowMs
-     * int count
-     * repeated screens:
-     *   UTF name
-     *   UTF world
-     *   int x1 y1 z1
-     *   int x2 y2 z2
-     *   byte axis
-     *   UTF url
-     *   boolean playing
-     *   boolean loop
-     *   float volume
-     *   long startEpochMs
-     *   long basePosMs
-     */
-    private byte[] buildSyncInnerBytes() throws Exception {
-        long now = System.currentTimeMillis();
+    public void forget(Player player) {
+        interests.remove(player.getUniqueId());
+    }
 
-        var bout = new ByteArrayOutputStream();
-        var out = new DataOutputStream(bout);
+    // screens — неизменяемый набор: Interest отсюда лежит в кэше снапшотов
+    private Interest computeInterest(String world, int rx, int rz, int rc, int vd) {
+        if (vd <= 0) {
+            return new Interest(world, rx, rz, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                    Set.copyOf(store.index().queryWorld(world)));
+        }
 
-        out.writeByte(CollinsProtocol.MSG_SYNC);
-        out.writeInt(CollinsProtocol.PROTOCOL_VERSION);
+        int vdChunks = (vd + 15) >> 4;
+        int cx0 = rx * rc - vdChunks;
+        int cz0 = rz * rc - vdChunks;
+        int cx1 = rx * rc + rc - 1 + vdChunks;
+        int cz1 = rz * rc + rc - 1 + vdChunks;
+        return new Interest(world, rx, rz, cx0, cz0, cx1, cz1,
+                Set.copyOf(store.index().query(world, cx0, cz0, cx1, cz1)));
+    }
 
-        // v2 global config + time anchor
-        out.writeFloat(runtime.globalVolume);
-        out.writeInt(runtime.hearRadius);
-        out.writeLong(now);
+    private static boolean covers(Interest in, Screen s) {
+        if (!in.world().equals(s.world())) return false;
+        int sx0 = Math.min(s.x1(), s.x2()) >> 4;
+        int sx1 = Math.max(s.x1(), s.x2()) >> 4;
+        int sz0 = Math.min(s.z1(), s.z2()) >> 4;
+        int sz1 = Math.max(s.z1(), s.z2()) >> 4;
+        return sx1 >= in.cx0() && sx0 <= in.cx1() && sz1 >= in.cz0() && sz0 <= in.cz1();
+    }
 
-        var all = store.all();
-        out.writeInt(all.size());
+    /**
+     * Экран создан или поменялись его поля (url, границы): экран целиком — тем, чей интерес он задевает.
+     * Кому экран был отправлен, но больше не интересен (пересоздан в другом месте), — удаление.
+     */
+    public void broadcastUpsert(Screen s) {
+        try {
+            String key = s.name().toLowerCase();
+            byte[] upsert = null;
+            byte[] remove = null;
+            for (Player p : Bukkit.getOnlinePlayers()) {
+                Interest in = interests.get(p.getUniqueId());
+                if (in == null) continue; // снапшот ещё не отправлен — он и принесёт экран
+
+                if (covers(in, s)) {
+                    in.screens().add(key);
+                    if (upsert == null) upsert = buildUpsert(s);
+                    p.sendPluginMessage(plugin, "collins:main", upsert);
+                } else if (in.screens().remove(key)) {
+                    if (remove == null) remove = buildRemove(s.name());
+                    p.sendPluginMessage(plugin, "collins:main", remove);
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to send UPSERT: " + e.getMessage());
+        }
+    }
 
-        for (Screen s : all) {
-            out.writeUTF(s.name());
-            out.writeUTF(s.world());
+    public void broadcastRemove(String screenName) {
+        try {
+            broadcast(buildRemove(screenName), screenName.toLowerCase(), true);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to send REMOVE: " + e.getMessage());
+        }
+    }
 
-            out.writeInt(s.x1()); out.writeInt(s.y1()); out.writeInt(s.z1());
-            out.writeInt(s.x2()); out.writeInt(s.y2()); out.writeInt(s.z2());
+    /** play/stop/pause/resume/seek: только флаги и таймер экрана, без координат и url. */
+    public void broadcastPlayback(Screen s) {
+        try {
+            byte[] payload = encoder.playback(revision.incrementAndGet(), System.currentTimeMillis(), s);
+            broadcast(payload, s.name().toLowerCase(), false);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to send PLAYBACK: " + e.getMessage());
+        }
+    }
 
-            out.writeByte(s.axis());
+    /** Общая громкость / радиус слышимости. */
+    public void broadcastGlobals() {
+        try {
+            broadcast(encoder.globals(revision.incrementAndGet(), System.currentTimeMillis()), null, false);
+            // радиус вырос за viewDistance (или вернулся) — интересы игроков посчитаны под старую дистанцию
+            if (interestDistance >= 0 && viewDistance() != interestDistance) requestBroadcastSync();
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to send GLOBALS: " + e.getMessage());
+        }
+    }
 
-            out.writeUTF(s.mp4Url() == null ? "" : s.mp4Url());
-            out.writeBoolean(s.playing());
-            out.writeBoolean(s.loop());
-            out.writeFloat(s.volume());
+    /**
+     * Одна сериализация на всех получателей. screenKey != null — только тем, кому этот экран отправлен
+     * (drop — и забыть его); null — всем, кто уже получил снапшот.
+     */
+    private void broadcast(byte[] payload, String screenKey, boolean drop) {
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            Interest in = interests.get(p.getUniqueId());
+            if (in == null) continue;
+            if (screenKey != null && !(drop ? in.screens().remove(screenKey) : in.screens().contains(screenKey))) continue;
+            p.sendPluginMessage(plugin, "collins:main", payload);
+        }
+    }
 
-            CollinsRuntimeState.Playback pb = runtime.get(s.name());
-            out.writeLong(pb.startEpochMs);
-            out.writeLong(pb.basePosMs);
+    private byte[] buildSnapshot(Set<String> keys) {
+        List<Screen> screens = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Screen s = store.get(key);
+            if (s != null) screens.add(s);
         }
+        // снапшот отражает всё до текущей ревизии включительно, дельты после него — новее
+        return encoder.snapshot(revision.get(), System.currentTimeMillis(), screens, true);
+    }
+
+    private byte[] buildUpsert(Screen s) {
+        return encoder.upsert(revision.incrementAndGet(), System.currentTimeMillis(), s);
+    }
 
-        out.flush();
-        return bout.toByteArray();
+    private byte[] buildRemove(String screenName) {
+        return encoder.remove(revision.incrementAndGet(), System.currentTimeMillis(), screenName);
     }
 }
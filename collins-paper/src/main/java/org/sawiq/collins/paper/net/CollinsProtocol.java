@@ -6,7 +6,15 @@ public final class CollinsProtocol {
     public static final String NAMESPACE = "collins";
     public static final String PATH_MAIN = "main";
 
-    public static final int PROTOCOL_VERSION = 2;
+    public static final int PROTOCOL_VERSION = 3;
 
+    // v1/v2: полный синк всех экранов (клиент по-прежнему понимает)
     public static final byte MSG_SYNC = 1;
+
+    // v3: снапшот при входе + дельты по одному экрану с ревизией
+    public static final byte MSG_SNAPSHOT = 2;
+    public static final byte MSG_UPSERT = 3;
+    public static final byte MSG_REMOVE = 4;
+    public static final byte MSG_PLAYBACK = 5;
+    public static final byte MSG_GLOBALS = 6;
 }
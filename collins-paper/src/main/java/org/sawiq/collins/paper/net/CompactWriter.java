@@ -0,0 +1,185 @@
+package org.sawiq.collins.paper.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Компактная запись пакетов v3 в переиспользуемый буфер, за один проход, сразу с обёрткой COLL.
+ * Заголовок фиксированной длины (msg, version, revision, serverNowMs, flags), тело — varint:
+ * координаты zigzag, x2/y2/z2 — разница с x1/y1/z1, строки — varint длина + UTF-8.
+ * Большое тело по возможности сжимается deflate (FLAG_DEFLATE, перед сжатым телом — varint исходной длины).
+ * Не потокобезопасен: один экземпляр на поток.
+ */
+final class CompactWriter {
+
+    static final int FLAG_DEFLATE = 1;
+
+    // тело меньше — deflate не окупается
+    private static final int DEFLATE_MIN_BYTES = 1024;
+
+    // magic(4) + len(4)
+    private static final int WRAP_BYTES = 8;
+    // msg(1) + version(4) + revision(8) + serverNowMs(8)
+    static final int SERVER_NOW_OFFSET = WRAP_BYTES + 1 + 4 + 8;
+    private static final int FLAGS_OFFSET = SERVER_NOW_OFFSET + 8;
+    private static final int BODY_OFFSET = FLAGS_OFFSET + 1;
+
+    private byte[] buf = new byte[4096];
+    private int pos;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] deflated = new byte[4096];
+
+    /** Начать пакет: обёртка и заголовок, дальше пишется тело. */
+    CompactWriter begin(byte msg, long revision, long serverNowMs) {
+        pos = 0;
+        writeByte('C');
+        writeByte('O');
+        writeByte('L');
+        writeByte('L');
+        writeInt(0); // длина — в finish
+        writeByte(msg);
+        writeInt(CollinsProtocol.PROTOCOL_VERSION);
+        writeLong(revision);
+        writeLong(serverNowMs);
+        writeByte(0); // flags
+        return this;
+    }
+
+    /** Готовый пакет; allowDeflate — сжать тело, если оно большое и сжатие выгодно. */
+    byte[] finish(boolean allowDeflate) {
+        int bodyLen = pos - BODY_OFFSET;
+        if (allowDeflate && bodyLen >= DEFLATE_MIN_BYTES) {
+            byte[] out = tryDeflate(bodyLen);
+            if (out != null) return out;
+        }
+        putInt(4, pos - WRAP_BYTES);
+        return Arrays.copyOf(buf, pos);
+    }
+
+    /** Свежий якорь времени в готовом пакете (заголовок не сжимается). */
+    static void patchServerNow(byte[] packet, long serverNowMs) {
+        for (int i = 0; i < 8; i++) {
+            packet[SERVER_NOW_OFFSET + i] = (byte) (serverNowMs >>> (56 - i * 8));
+        }
+    }
+
+    private byte[] tryDeflate(int bodyLen) {
+        deflater.reset();
+        deflater.setInput(buf, BODY_OFFSET, bodyLen);
+        deflater.finish();
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n == deflated.length) deflated = Arrays.copyOf(deflated, deflated.length * 2);
+            n += deflater.deflate(deflated, n, deflated.length - n);
+            // сжатое не меньше исходного — не нужно
+            if (n >= bodyLen) return null;
+        }
+
+        int rawLenBytes = varIntSize(bodyLen);
+        int total = BODY_OFFSET + rawLenBytes + n;
+        if (total >= pos) return null;
+
+        byte[] out = new byte[total];
+        System.arraycopy(buf, 0, out, 0, BODY_OFFSET);
+        out[FLAGS_OFFSET] = (byte) FLAG_DEFLATE;
+        int p = BODY_OFFSET;
+        int v = bodyLen;
+        while ((v & ~0x7F) != 0) {
+            out[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out[p++] = (byte) v;
+        System.arraycopy(deflated, 0, out, p, n);
+        int inner = total - WRAP_BYTES;
+        out[4] = (byte) (inner >>> 24);
+        out[5] = (byte) (inner >>> 16);
+        out[6] = (byte) (inner >>> 8);
+        out[7] = (byte) inner;
+        return out;
+    }
+
+    // ==================== Примитивы ====================
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+    }
+
+    CompactWriter writeByte(int v) {
+        ensure(1);
+        buf[pos++] = (byte) v;
+        return this;
+    }
+
+    CompactWriter writeInt(int v) {
+        ensure(4);
+        putInt(pos, v);
+        pos += 4;
+        return this;
+    }
+
+    private void putInt(int at, int v) {
+        buf[at] = (byte) (v >>> 24);
+        buf[at + 1] = (byte) (v >>> 16);
+        buf[at + 2] = (byte) (v >>> 8);
+        buf[at + 3] = (byte) v;
+    }
+
+    CompactWriter writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+        return this;
+    }
+
+    CompactWriter writeFloat(float v) {
+        return writeInt(Float.floatToIntBits(v));
+    }
+
+    CompactWriter writeBoolean(boolean v) {
+        return writeByte(v ? 1 : 0);
+    }
+
+    CompactWriter writeVarInt(int v) {
+        ensure(5);
+        while ((v & ~0x7F) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return this;
+    }
+
+    CompactWriter writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return this;
+    }
+
+    /** Знаковое число: zigzag, чтобы маленькие отрицательные тоже были короткими. */
+    CompactWriter writeZigZag(int v) {
+        return writeVarInt((v << 1) ^ (v >> 31));
+    }
+
+    CompactWriter writeString(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        writeVarInt(b.length);
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, pos, b.length);
+        pos += b.length;
+        return this;
+    }
+
+    private static int varIntSize(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) {
+            n++;
+            v >>>= 7;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,147 @@
+package org.sawiq.collins.paper.net;
+
+import org.sawiq.collins.paper.model.Screen;
+import org.sawiq.collins.paper.state.CollinsRuntimeState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сборка пакетов v3 поверх {@link CompactWriter}. Без Bukkit: ревизию и время даёт вызывающий
+ * ({@link CollinsMessenger}), таймеры экранов и глобальные настройки — {@link CollinsRuntimeState}.
+ * Один буфер на экземпляр — не потокобезопасен.
+ *
+ * WRAP: magic "COLL"(4) + int len + inner.
+ * INNER (v3, см. {@link CompactWriter}):
+ * byte msg, int version, long revision, long serverNowMs, byte flags
+ * [FLAG_DEFLATE: varint rawLen + deflate(body)]
+ *
+ * SNAPSHOT: float globalVolume, varint hearRadius, strings, varint count, screens
+ * UPSERT: strings, screen
+ * REMOVE: string name
+ * PLAYBACK: string name, playback
+ * GLOBALS: float globalVolume, varint hearRadius
+ *
+ * strings (таблица пакета: миры и префиксы url до последнего '/'): varint n, string * n
+ * screen:
+ *   string name
+ *   varint world (индекс в таблице)
+ *   zigzag x1 y1 z1
+ *   zigzag x2-x1 y2-y1 z2-z1
+ *   byte axis
+ *   varint urlPrefix (индекс в таблице), string urlRest
+ *   playback
+ * playback: byte flags (1 playing, 2 loop), float volume, varlong startEpochMs, varlong basePosMs
+ * string: varint len + UTF-8
+ */
+public final class SyncEncoder {
+
+    private final CompactWriter writer = new CompactWriter();
+    private final CollinsRuntimeState runtime;
+
+    public SyncEncoder(CollinsRuntimeState runtime) {
+        this.runtime = runtime;
+    }
+
+    /** allowDeflate — сжать тело, если оно большое и сжатие выгодно. */
+    public byte[] snapshot(long revision, long serverNowMs, List<Screen> screens, boolean allowDeflate) {
+        CompactWriter w = writer.begin(CollinsProtocol.MSG_SNAPSHOT, revision, serverNowMs);
+        w.writeFloat(runtime.globalVolume());
+        w.writeVarInt(runtime.hearRadius());
+
+        StringTable table = new StringTable(screens);
+        table.write(w);
+        w.writeVarInt(screens.size());
+        for (Screen s : screens) {
+            writeScreen(w, table, s);
+        }
+        return w.finish(allowDeflate);
+    }
+
+    public byte[] upsert(long revision, long serverNowMs, Screen s) {
+        CompactWriter w = writer.begin(CollinsProtocol.MSG_UPSERT, revision, serverNowMs);
+        StringTable table = new StringTable(List.of(s));
+        table.write(w);
+        writeScreen(w, table, s);
+        return w.finish(false);
+    }
+
+    public byte[] remove(long revision, long serverNowMs, String screenName) {
+        CompactWriter w = writer.begin(CollinsProtocol.MSG_REMOVE, revision, serverNowMs);
+        w.writeString(screenName);
+        return w.finish(false);
+    }
+
+    public byte[] playback(long revision, long serverNowMs, Screen s) {
+        CompactWriter w = writer.begin(CollinsProtocol.MSG_PLAYBACK, revision, serverNowMs);
+        w.writeString(s.name());
+        writePlayback(w, s);
+        return w.finish(false);
+    }
+
+    public byte[] globals(long revision, long serverNowMs) {
+        CompactWriter w = writer.begin(CollinsProtocol.MSG_GLOBALS, revision, serverNowMs);
+        w.writeFloat(runtime.globalVolume());
+        w.writeVarInt(runtime.hearRadius());
+        return w.finish(false);
+    }
+
+    /** Строки, повторяющиеся между экранами пакета: имена миров и префиксы url. */
+    private static final class StringTable {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+
+        StringTable(List<Screen> screens) {
+            for (Screen s : screens) {
+                indexOf(s.world());
+                indexOf(urlPrefix(s.mp4Url()));
+            }
+        }
+
+        int indexOf(String s) {
+            return index.computeIfAbsent(s, k -> {
+                strings.add(k);
+                return strings.size() - 1;
+            });
+        }
+
+        void write(CompactWriter w) {
+            w.writeVarInt(strings.size());
+            for (String s : strings) w.writeString(s);
+        }
+    }
+
+    private static String urlPrefix(String url) {
+        if (url == null) return "";
+        int slash = url.lastIndexOf('/');
+        return slash < 0 ? "" : url.substring(0, slash + 1);
+    }
+
+    private void writeScreen(CompactWriter w, StringTable table, Screen s) {
+        w.writeString(s.name());
+        w.writeVarInt(table.indexOf(s.world()));
+
+        w.writeZigZag(s.x1()).writeZigZag(s.y1()).writeZigZag(s.z1());
+        w.writeZigZag(s.x2() - s.x1()).writeZigZag(s.y2() - s.y1()).writeZigZag(s.z2() - s.z1());
+
+        w.writeByte(s.axis());
+
+        String url = s.mp4Url() == null ? "" : s.mp4Url();
+        String prefix = urlPrefix(url);
+        w.writeVarInt(table.indexOf(prefix));
+        w.writeString(url.substring(prefix.length()));
+
+        writePlayback(w, s);
+    }
+
+    private void writePlayback(CompactWriter w, Screen s) {
+        w.writeByte((s.playing() ? 1 : 0) | (s.loop() ? 2 : 0));
+        w.writeFloat(s.volume());
+
+        CollinsRuntimeState.Playback pb = runtime.get(s.name());
+        w.writeVarLong(pb.startEpochMs());
+        w.writeVarLong(pb.basePosMs());
+    }
+}
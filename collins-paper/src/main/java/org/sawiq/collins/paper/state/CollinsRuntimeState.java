@@ -2,25 +2,72 @@ package org.sawiq.collins.paper.state;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Состояние, которое не хранится на диске: общая громкость, радиус слышимости и таймеры экранов.
+ * Меняется только через сеттеры — каждый двигает {@link #revision()}, по ней кэшируются снапшоты.
+ */
 public final class CollinsRuntimeState {
-    public volatile float globalVolume = 1.0f;
-    public volatile int hearRadius = 100;
+    private volatile float globalVolume = 1.0f;
+    private volatile int hearRadius = 100;
 
-    public static final class Playback {
-        public volatile long startEpochMs = 0; // когда “пошло”
-        public volatile long basePosMs = 0;    // накопленная позиция (для resume)
+    private final AtomicLong revision = new AtomicLong(0);
+
+    public final class Playback {
+        private volatile long startEpochMs = 0; // когда “пошло”
+        private volatile long basePosMs = 0;    // накопленная позиция (для resume)
+
+        public long startEpochMs() {
+            return startEpochMs;
+        }
+
+        public long basePosMs() {
+            return basePosMs;
+        }
+
+        /** startEpochMs = 0 — стоит на basePosMs. */
+        public void set(long startEpochMs, long basePosMs) {
+            this.startEpochMs = startEpochMs;
+            this.basePosMs = basePosMs;
+            markChanged();
+        }
     }
 
     private final Map<String, Playback> playback = new ConcurrentHashMap<>();
 
+    public float globalVolume() {
+        return globalVolume;
+    }
+
+    public void setGlobalVolume(float v) {
+        globalVolume = v;
+        markChanged();
+    }
+
+    public int hearRadius() {
+        return hearRadius;
+    }
+
+    public void setHearRadius(int r) {
+        hearRadius = r;
+        markChanged();
+    }
+
+    /** Растёт на каждое изменение громкости, радиуса или таймера. */
+    public long revision() {
+        return revision.get();
+    }
+
+    public void markChanged() {
+        revision.incrementAndGet();
+    }
+
     public Playback get(String screenName) {
         return playback.computeIfAbsent(screenName.toLowerCase(), k -> new Playback());
     }
 
     public void resetPlayback(String screenName) {
-        Playback p = get(screenName);
-        p.startEpochMs = 0;
-        p.basePosMs = 0;
+        get(screenName).set(0, 0);
     }
 }
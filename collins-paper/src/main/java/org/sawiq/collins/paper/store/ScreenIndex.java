@@ -0,0 +1,91 @@
+package org.sawiq.collins.paper.store;
+
+import org.sawiq.collins.paper.model.Screen;
+
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Пространственный индекс экранов: мир -> чанк (ключ cx/cz) -> имена экранов, чьи границы
+ * по XZ задевают этот чанк. Запрос "экраны в прямоугольнике чанков" не перебирает весь ScreenStore.
+ * Обновляется самим {@link ScreenStore} (главный поток).
+ */
+public final class ScreenIndex {
+
+    private final Map<String, Map<Long, Set<String>>> worlds = new HashMap<>();
+
+    static long chunkKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xffffffffL);
+    }
+
+    void add(Screen s) {
+        String key = s.name().toLowerCase();
+        Map<Long, Set<String>> chunks = worlds.computeIfAbsent(s.world(), w -> new HashMap<>());
+        forEachChunk(s, ck -> chunks.computeIfAbsent(ck, k -> new HashSet<>()).add(key));
+    }
+
+    void remove(Screen s) {
+        String key = s.name().toLowerCase();
+        Map<Long, Set<String>> chunks = worlds.get(s.world());
+        if (chunks == null) return;
+        forEachChunk(s, ck -> {
+            Set<String> set = chunks.get(ck);
+            if (set == null) return;
+            set.remove(key);
+            if (set.isEmpty()) chunks.remove(ck);
+        });
+        if (chunks.isEmpty()) worlds.remove(s.world());
+    }
+
+    void clear() {
+        worlds.clear();
+    }
+
+    /** Имена (lower-case) экранов мира, задевающих чанки [cx0..cx1] x [cz0..cz1]. */
+    public Set<String> query(String world, int cx0, int cz0, int cx1, int cz1) {
+        Map<Long, Set<String>> chunks = worlds.get(world);
+        if (chunks == null) return Set.of();
+
+        Set<String> out = new HashSet<>();
+        long area = (long) (cx1 - cx0 + 1) * (cz1 - cz0 + 1);
+        if (area > chunks.size()) {
+            // занятых чанков меньше, чем в прямоугольнике, — перебираем занятые
+            for (var e : chunks.entrySet()) {
+                long ck = e.getKey();
+                int cx = (int) (ck >> 32);
+                int cz = (int) ck;
+                if (cx >= cx0 && cx <= cx1 && cz >= cz0 && cz <= cz1) out.addAll(e.getValue());
+            }
+        } else {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int cz = cz0; cz <= cz1; cz++) {
+                    Set<String> set = chunks.get(chunkKey(cx, cz));
+                    if (set != null) out.addAll(set);
+                }
+            }
+        }
+        return out;
+    }
+
+    /** Все экраны мира (дальность не ограничена). */
+    public Set<String> queryWorld(String world) {
+        Map<Long, Set<String>> chunks = worlds.get(world);
+        if (chunks == null) return Set.of();
+
+        Set<String> out = new HashSet<>();
+        for (Set<String> set : chunks.values()) out.addAll(set);
+        return out;
+    }
+
+    private static void forEachChunk(Screen s, LongConsumer action) {
+        int cx0 = Math.min(s.x1(), s.x2()) >> 4;
+        int cx1 = Math.max(s.x1(), s.x2()) >> 4;
+        int cz0 = Math.min(s.z1(), s.z2()) >> 4;
+        int cz1 = Math.max(s.z1(), s.z2()) >> 4;
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cz = cz0; cz <= cz1; cz++) {
+                action.accept(chunkKey(cx, cz));
+            }
+        }
+    }
+}
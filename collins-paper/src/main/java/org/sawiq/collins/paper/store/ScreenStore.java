@@ -11,9 +11,13 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.Base64;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class ScreenStore {
     private final Map<String, Screen> screens = new ConcurrentHashMap<>();
+    private final ScreenIndex index = new ScreenIndex();
+    // растёт на каждое изменение набора экранов (кэш снапшотов в CollinsMessenger)
+    private final AtomicLong revision = new AtomicLong(0);
     private final JavaPlugin plugin;
     private final File file;
 
@@ -30,16 +34,34 @@ public final class ScreenStore {
         return screens.get(name.toLowerCase());
     }
 
+    public ScreenIndex index() {
+        return index;
+    }
+
+    public long revision() {
+        return revision.get();
+    }
+
     public void put(Screen screen) {
-        screens.put(screen.name().toLowerCase(), screen);
+        Screen old = screens.put(screen.name().toLowerCase(), screen);
+        if (old != null) index.remove(old);
+        index.add(screen);
+        revision.incrementAndGet();
     }
 
     public Screen remove(String name) {
-        return screens.remove(name.toLowerCase());
+        Screen removed = screens.remove(name.toLowerCase());
+        if (removed != null) {
+            index.remove(removed);
+            revision.incrementAndGet();
+        }
+        return removed;
     }
 
     public void load() {
         screens.clear();
+        index.clear();
+        revision.incrementAndGet();
         if (!file.exists()) return;
 
         FileConfiguration cfg = YamlConfiguration.loadConfiguration(file);